@@ -1,10 +1,25 @@
 import com.formdev.flatlaf.themes.FlatMacDarkLaf;
 import se.umu.cs.appjava.controller.PageController;
+import se.umu.cs.appjava.model.HttpTransport;
+import se.umu.cs.appjava.model.Program;
 import se.umu.cs.appjava.view.MainWindow;
 import javax.swing.*;
+import java.time.DateTimeException;
+import java.time.ZoneId;
 
 public class Main {
     public static void main(String[] args){
+        //open the connection to the api while the window is being built
+        HttpTransport.getInstance().warmUp();
+        //the times are shown in the zone of the system unless another one is asked for
+        String zone = System.getProperty("radioinfo.zone");
+        if (zone != null) {
+            try {
+                Program.setDisplayZone(ZoneId.of(zone));
+            } catch (DateTimeException e) {
+                System.out.println("Error: unknown time zone " + zone);
+            }
+        }
         try{
             UIManager.setLookAndFeel(new FlatMacDarkLaf());
         } catch (UnsupportedLookAndFeelException e) {
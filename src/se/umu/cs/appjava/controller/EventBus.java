@@ -0,0 +1,232 @@
+package se.umu.cs.appjava.controller;
+
+import se.umu.cs.appjava.model.ChannelDiff;
+import se.umu.cs.appjava.model.ChannelRegistry;
+import se.umu.cs.appjava.model.NowAndNext;
+import se.umu.cs.appjava.model.Observer;
+import se.umu.cs.appjava.model.Program;
+import se.umu.cs.appjava.model.ScheduleDiff;
+import se.umu.cs.appjava.model.ScheduleIndex;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that sits between the model and the page controller. The workers and refreshers tell the bus what happened
+ * from any thread, and the bus passes it on to the page controller on the EDT in batches, at most once per frame.
+ * Within a batch a schedule that was loaded several times is only passed on once, only the latest channels and the
+ * latest now and next list are kept, and all errors are folded into one message that tells how many times each
+ * error happened. When the channels arrive more than once in a batch, their changes are joined into one set of
+ * changes from the channels before the first to the latest. While an error is being shown no other error is passed
+ * on, the errors that happen meanwhile are shown together once it has been closed, so an outage never stacks one
+ * dialog per channel.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class EventBus implements Observer {
+    //the time one batch collects events, about one frame
+    private static final int FRAME_MILLIS = 16;
+    private final Observer target;
+    private final Timer frameTimer;
+    //the events of the next batch, guarded by this
+    private ChannelRegistry channels;
+    private ChannelDiff channelChanges;
+    private final LinkedHashMap<String, List<Program>> programs = new LinkedHashMap<>();
+    private final List<Change> changes = new ArrayList<>();
+    private final LinkedHashSet<String> schedules = new LinkedHashSet<>();
+    private List<NowAndNext> nowAndNext;
+    private final LinkedHashMap<String, Integer> errors = new LinkedHashMap<>();
+    private boolean scheduled;
+    //true while an error is being shown, only used on the edt
+    private boolean showingError;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong errorsFolded = new AtomicLong();
+
+    /**
+     * Constructor for the bus
+     * @param target the observer to pass the batches on to, it is only called on the EDT
+     */
+    public EventBus(Observer target){
+        this.target = target;
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> deliver());
+        frameTimer.setRepeats(false);
+    }
+
+    @Override
+    public void channelsAvailable(ChannelRegistry channels, ChannelDiff changes){
+        synchronized (this) {
+            this.channels = channels;
+            channelChanges = channelChanges == null ? changes : channelChanges.then(changes);
+        }
+        received();
+    }
+
+    @Override
+    public void scheduleAvailable(String channelId){
+        synchronized (this) {
+            schedules.add(channelId);
+        }
+        received();
+    }
+
+    @Override
+    public void scheduleChanged(String channelId, ScheduleDiff changes, ScheduleIndex index){
+        synchronized (this) {
+            this.changes.add(new Change(channelId, changes, index));
+        }
+        received();
+    }
+
+    @Override
+    public void programsAvailable(String channelId, List<Program> programs){
+        synchronized (this) {
+            this.programs.computeIfAbsent(channelId, id -> new ArrayList<>()).addAll(programs);
+        }
+        received();
+    }
+
+    @Override
+    public void nowAndNextAvailable(List<NowAndNext> nowAndNext){
+        synchronized (this) {
+            this.nowAndNext = nowAndNext;
+        }
+        received();
+    }
+
+    @Override
+    public void errorOccurred(String errorMessage){
+        synchronized (this) {
+            errors.merge(errorMessage, 1, Integer::sum);
+        }
+        received();
+    }
+
+    /**
+     * Method that will count an event and start the frame of the next batch unless it has already been started
+     */
+    private void received(){
+        received.incrementAndGet();
+        boolean start;
+        synchronized (this) {
+            start = !scheduled;
+            scheduled = true;
+        }
+        if (start) {
+            frameTimer.restart();
+        }
+    }
+
+    /**
+     * Method that will pass the events of a batch on to the target, runs on the EDT. The errors are passed on last
+     * since showing them waits for the user.
+     */
+    private void deliver(){
+        ChannelRegistry channels;
+        ChannelDiff channelChanges;
+        LinkedHashMap<String, List<Program>> programs;
+        List<Change> changes;
+        List<String> schedules;
+        List<NowAndNext> nowAndNext;
+        String error = null;
+        synchronized (this) {
+            scheduled = false;
+            channels = this.channels;
+            this.channels = null;
+            channelChanges = this.channelChanges;
+            this.channelChanges = null;
+            programs = new LinkedHashMap<>(this.programs);
+            this.programs.clear();
+            changes = new ArrayList<>(this.changes);
+            this.changes.clear();
+            schedules = new ArrayList<>(this.schedules);
+            this.schedules.clear();
+            nowAndNext = this.nowAndNext;
+            this.nowAndNext = null;
+            //the errors wait while an error is shown
+            if (!showingError && !errors.isEmpty()) {
+                error = foldErrors();
+                errors.clear();
+            }
+        }
+        batches.incrementAndGet();
+        if (channels != null) {
+            target.channelsAvailable(channels, channelChanges);
+        }
+        programs.forEach(target::programsAvailable);
+        changes.forEach(change -> target.scheduleChanged(change.channelId, change.changes, change.index));
+        schedules.forEach(target::scheduleAvailable);
+        if (nowAndNext != null) {
+            target.nowAndNextAvailable(nowAndNext);
+        }
+        if (error != null) {
+            showingError = true;
+            try {
+                target.errorOccurred(error);
+            } finally {
+                showingError = false;
+            }
+            synchronized (this) {
+                //show the errors that happened while this one was shown
+                if (!errors.isEmpty() && !scheduled) {
+                    scheduled = true;
+                    frameTimer.restart();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that will fold the errors of a batch into one message, must hold the lock
+     * @return the message
+     */
+    private String foldErrors(){
+        if (errors.size() == 1) {
+            Map.Entry<String, Integer> only = errors.entrySet().iterator().next();
+            errorsFolded.addAndGet(only.getValue() - 1);
+            return only.getValue() == 1 ? only.getKey() : only.getKey() + " (" + only.getValue() + " gånger)";
+        }
+        StringBuilder message = new StringBuilder("Flera fel inträffade:");
+        int count = 0;
+        for (Map.Entry<String, Integer> error : errors.entrySet()) {
+            message.append("\n").append(error.getKey());
+            if (error.getValue() > 1) {
+                message.append(" (").append(error.getValue()).append(" gånger)");
+            }
+            count += error.getValue();
+        }
+        errorsFolded.addAndGet(count - 1);
+        return message.toString();
+    }
+
+    /**
+     * Method that will describe the counters for the statistics dialog
+     * @return a line with the counters
+     */
+    public String getStatistics(){
+        return "Händelser: " + received.get() + " mottagna, " + batches.get() + " leveranser till EDT, "
+                + errorsFolded.get() + " fel sammanslagna";
+    }
+
+    /**
+     * Class that holds the changes of a schedule until they are passed on
+     */
+    private static class Change {
+        private final String channelId;
+        private final ScheduleDiff changes;
+        private final ScheduleIndex index;
+
+        private Change(String channelId, ScheduleDiff changes, ScheduleIndex index){
+            this.channelId = channelId;
+            this.changes = changes;
+            this.index = index;
+        }
+    }
+}
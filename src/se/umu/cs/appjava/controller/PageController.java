@@ -6,36 +6,69 @@ import se.umu.cs.appjava.view.MainWindow;
 import se.umu.cs.appjava.view.ProgramView;
 
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import java.awt.event.*;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class is the controller class that is responsible for managing the pages in the GUI and the actions
  * that can be performed on them. It also communicates with the model classes to get the data that is needed
  * when the user performs an action. The class gets notified when the model classes are done parsing the api
- * or when the timer has expired via the observer pattern.
+ * via the observer pattern. The model reports to an event bus that passes the notifications on in batches on the
+ * edt thread, so the observer methods of this class always run on the edt.
+ * The channel list is fetched again now and then, the interval can be set with the system property
+ * radioinfo.channels.interval (seconds). The request is conditional, so a list that has not changed costs one short
+ * answer and no work on the edt.
  *
  * @author Jonatan Westling
  * @version 1.0
  * @date 2024-01-05
  */
-public class PageController implements ActionListener, Observer {
+public class PageController implements ActionListener, ChangeListener, Observer {
+    //never fetch the channel list more often than this
+    private static final long MIN_CHANNEL_INTERVAL_SECONDS = 60;
 
     MainWindow mainWindow;
-    HashMap<String, ArrayList<ChannelInfo>> sortedChannels;
+    //swapped as a whole when the channels are loaded, so it can be read from any thread without locks
+    private final AtomicReference<ChannelRegistry> registry;
     private volatile boolean isParsing;
+    //true while the timer refreshes the channels in the background, kept apart so the user is never told to wait
+    private boolean isRefreshingChannels;
     private boolean networkErrorOccurred;
+    private final Prefetcher prefetcher;
+    private final NowAndNextRefresher nowAndNextRefresher;
+    private final FetchScheduler fetchScheduler;
+    private final RefreshScheduler refreshScheduler;
+    private final EventBus eventBus;
+    private final Timer channelTimer;
+    //the id of the channel on screen, or null when another page is shown, only used on the edt
+    private String visibleChannelId;
     public PageController(MainWindow mainWindow){
         this.mainWindow = mainWindow;
         this.mainWindow.setHomeActionListener(this);
         this.mainWindow.setHelpActionListener(this);
         this.mainWindow.setUpdateActionListener(this);
+        this.mainWindow.setStatisticsActionListener(this);
+        this.mainWindow.setNowAndNextActionListener(this);
         this.mainWindow.setExitActionListener(this);
         this.isParsing = false;
+        this.eventBus = new EventBus(this);
         this.networkErrorOccurred = false;
+        this.prefetcher = Prefetcher.getInstance();
+        this.fetchScheduler = FetchScheduler.getInstance();
+        this.refreshScheduler = new RefreshScheduler();
+        this.refreshScheduler.setObserver(eventBus);
+        this.registry = new AtomicReference<>(ChannelRegistry.EMPTY);
+        this.nowAndNextRefresher = new NowAndNextRefresher();
+        this.nowAndNextRefresher.setObserver(eventBus);
+        long channelInterval = Math.max(MIN_CHANNEL_INTERVAL_SECONDS, Long.getLong("radioinfo.channels.interval", 3600));
+        this.channelTimer = new Timer((int) TimeUnit.SECONDS.toMillis(channelInterval), e -> refreshChannels());
         loadSortedChannels();
-        setupTimer();
+        channelTimer.start();
+        nowAndNextRefresher.start();
     }
 
     /**
@@ -64,21 +97,42 @@ public class PageController implements ActionListener, Observer {
                     updateEvent();
                 }
                 break;
+            case "statistics":
+                statisticsEvent();
+                break;
             case "exit":
                 exitEvent();
                 break;
         }
     }
 
+    /**
+     * Method that will be called when a channel in the menu is hovered over or left, it will start loading the
+     * schedule of a hovered channel in the background so it is ready if the user clicks it.
+     * @param e the event to be processed
+     */
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        if (e.getSource() instanceof JMenuItem menuItem && menuItem.isArmed()
+                && menuItem.getActionCommand().startsWith("is channel")) {
+            ChannelInfo channelInfo = registry.get().getById(menuItem.getActionCommand().substring(10));
+            if (channelInfo != null) {
+                prefetcher.prefetch(channelInfo);
+            }
+        }
+    }
+
     /**
      * Method that will be called when the home button is pressed, it will display the home page
      */
     private void homeEvent(){
+        leaveVisibleChannel(null);
         mainWindow.getCardLayout().show(mainWindow.getCardPanel(), "homePage");
     }
 
     /**
-     * Method that will be called when the update button is pressed, it will update the channels and the cashed schedules
+     * Method that will be called when the update button is pressed, it will update the channels and the cashed
+     * schedules. The channel on screen is always fetched first.
      */
     private void updateEvent(){
         //check if channels are currently parsing
@@ -87,19 +141,14 @@ public class PageController implements ActionListener, Observer {
             return;
         }
         //update all cashed schedules, let a worker parse each schedule
-        for(String channelType : sortedChannels.keySet()){
-            ArrayList<ChannelInfo> channelInfos = sortedChannels.get(channelType);
-            for (ChannelInfo channelInfo : channelInfos){
-                if (channelInfo.isScheduleCached()){
-                    //create a worker to parse the schedule
-                    Worker worker1 = new Worker(channelInfo);
-                    worker1.setObserver(this);
-                    worker1.execute();
-                }
+        for (ChannelInfo channelInfo : registry.get().getAll()){
+            if (channelInfo.isScheduleCached()){
+                //refresh the schedule now, the next planned refresh of the channel is counted from this one
+                boolean visible = channelInfo.getChannelId().equals(visibleChannelId);
+                refreshScheduler.refreshNow(channelInfo, visible ? FetchScheduler.Priority.VISIBLE : FetchScheduler.Priority.USER);
             }
         }
-        //reset the timer
-        setupTimer();
+        nowAndNextRefresher.refreshNow();
     }
 
     /**
@@ -109,6 +158,16 @@ public class PageController implements ActionListener, Observer {
         JOptionPane.showMessageDialog(mainWindow, "Dubbelklicka på en kanal för  detaljerad information angående sändningen",
                 "Hjälp", JOptionPane.INFORMATION_MESSAGE);
     }
+    /**
+     * Method that will be called when the statistics button is pressed, it will display how the caches are doing
+     */
+    private void statisticsEvent(){
+        String statistics = ResponseCache.getInstance().getStatistics() + "\n" + DayPageCache.getInstance().getStatistics()
+                + "\n" + prefetcher.getStatistics() + "\n" + eventBus.getStatistics()
+                + "\n" + fetchScheduler.getStatistics() + "\n" + ExecutionBackend.getInstance().getStatistics()
+                + "\n" + HttpTransport.getInstance().getStatistics();
+        JOptionPane.showMessageDialog(mainWindow, statistics, "Statistik", JOptionPane.INFORMATION_MESSAGE);
+    }
     /**
      * Method that will be called when the exit button is pressed, it will exit the program
      */
@@ -116,6 +175,10 @@ public class PageController implements ActionListener, Observer {
         //exit the program
         int response = JOptionPane.showConfirmDialog(mainWindow, "Vill du avsluta programmet?", "RadioInfo", JOptionPane.YES_NO_OPTION);
         if (response == JOptionPane.YES_OPTION){
+            //stop the background threads before leaving
+            channelTimer.stop();
+            refreshScheduler.shutdown();
+            nowAndNextRefresher.stop();
             System.exit(0);
         }
     }
@@ -127,98 +190,235 @@ public class PageController implements ActionListener, Observer {
      */
     private void channelEvent(ActionEvent e){
         //a channel has been clicked now display the channel info, ignore the "is channel" part of the string
-        String channelName = e.getActionCommand().substring(10);
-
-        for (String channelType:sortedChannels.keySet()){
-            ArrayList<ChannelInfo> channelInfos = sortedChannels.get(channelType);
-            for (ChannelInfo channelInfo:channelInfos){
-                if (channelInfo.getChannelName().equals(channelName)){
-                    if (!channelInfo.isScheduleCached()){
-                        //if schedule not cached, let worker parse it
-                        Worker parseWorker = new Worker(channelInfo);
-                        parseWorker.setObserver(this);
-                        parseWorker.execute();
-                        //add the channel view to the main window
-                        ChannelView channelView = new ChannelView(channelInfo, this);
-                        mainWindow.addChannelView(channelView, channelName);
-                        mainWindow.getCardLayout().show(mainWindow.getCardPanel(), channelName);
-                    } else {
-                        //schedule already cached so just display it
-                        mainWindow.getCardLayout().show(mainWindow.getCardPanel(), channelName);
-                    }
-                }
+        String channelId = e.getActionCommand().substring(10);
+        ChannelInfo channelInfo = registry.get().getById(channelId);
+        if (channelInfo == null){
+            return;
+        }
+        prefetcher.channelOpened(channelInfo);
+        showChannel(channelInfo);
+    }
+
+    /**
+     * Method that will display the schedule of a channel, and let a worker parse it if it is not cached
+     * @param channelInfo the channel to show
+     */
+    private void showChannel(ChannelInfo channelInfo){
+        String channelId = channelInfo.getChannelId();
+        leaveVisibleChannel(channelId);
+        ChannelView channelView = mainWindow.getChannelView(channelId);
+        if (channelView == null){
+            //add the channel view to the main window, a prefetched schedule can be shown right away
+            channelView = new ChannelView(channelInfo, this);
+            mainWindow.addChannelView(channelView, channelId);
+            if (channelInfo.isScheduleCached()){
+                channelView.updateSchedule();
             }
         }
+        if (!channelInfo.isScheduleCached()){
+            fetchVisibleSchedule(channelInfo);
+        }
+        //keep the schedule up to date from now on
+        refreshScheduler.track(channelInfo);
+        //schedule already cached so just display it
+        mainWindow.getCardLayout().show(mainWindow.getCardPanel(), channelId);
+    }
+
+    /**
+     * Method that will let a worker parse the schedule of the channel on screen. If the channel is already being
+     * fetched, for example prefetched, that fetch is moved to the front and the view is updated when it is done.
+     * @param channelInfo the channel on screen
+     */
+    private void fetchVisibleSchedule(ChannelInfo channelInfo){
+        String channelId = channelInfo.getChannelId();
+        Worker parseWorker = new Worker(channelInfo, false);
+        parseWorker.setObserver(eventBus);
+        if (!fetchScheduler.submit(channelId, FetchScheduler.Priority.VISIBLE, parseWorker)){
+            fetchScheduler.whenDone(channelId, () -> {
+                if (channelInfo.isScheduleCached()){
+                    eventBus.scheduleAvailable(channelId);
+                } else {
+                    //the other fetch failed quietly, fetch again so the user gets the error
+                    SwingUtilities.invokeLater(() -> {
+                        if (channelId.equals(visibleChannelId)){
+                            fetchVisibleSchedule(channelInfo);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Method that will be called when the user has scrolled to an edge of the schedule of a channel, it will let a
+     * worker load the next day at that edge unless the schedule already reaches as far as it may. A day that is
+     * already being loaded is not loaded again.
+     * @param channelInfo the channel on screen
+     * @param edge the edge the user scrolled to
+     */
+    public void scheduleEdgeReached(ChannelInfo channelInfo, ScheduleWindow.Edge edge){
+        if (!channelInfo.isScheduleCached() || !channelInfo.getWindow().canGrow(edge)){
+            return;
+        }
+        Worker growWorker = new Worker(channelInfo, edge);
+        growWorker.setObserver(eventBus);
+        //the key differs from the one of the whole schedule, so growing does not wait for a refresh or the other way
+        fetchScheduler.submit(channelInfo.getChannelId() + "/" + edge, FetchScheduler.Priority.VISIBLE, growWorker);
     }
+
     /**
-     * Method that will be called in the beginning of the program to load the channels at a separate thread
+     * Method that will be called when another page is about to be shown, a fetch that only waited because the
+     * channel was on screen is dropped
+     * @param nextChannelId the id of the channel that will be shown, or null if it is not a channel
+     */
+    private void leaveVisibleChannel(String nextChannelId){
+        if (visibleChannelId != null && !visibleChannelId.equals(nextChannelId)){
+            fetchScheduler.channelLeft(visibleChannelId);
+        }
+        visibleChannelId = nextChannelId;
+    }
+
+    /**
+     * Method that will be called in the beginning of the program to load the channels at a separate thread, and
+     * again when the user asks for an update after a network error.
      */
     private void loadSortedChannels() {
         isParsing = true;
-        Worker channelWorker = new Worker();
-        channelWorker.setObserver(this);
-        channelWorker.execute();
+        startChannelWorker(new Worker(registry.get()));
+    }
+
+    /**
+     * Method that will start a worker that parses the channels and matches them against the ones that are shown
+     * @param channelWorker the worker
+     */
+    private void startChannelWorker(Worker channelWorker){
+        channelWorker.setObserver(eventBus);
+        //run on the execution backend
+        ExecutionBackend.getInstance().getExecutor().execute(channelWorker);
     }
 
     /**
-     * Method that will set up a timer that will notify the controller after one hour has passed
+     * Method that will be called by the timer on the edt thread, it will fetch the channel list again unless it is
+     * already being fetched or has never been loaded, then the user has to ask for it
      */
-    private void setupTimer(){
-        UpdateTimer timer = new UpdateTimer();
-        timer.setObserver(this);
-        timer.startTimer();
+    private void refreshChannels(){
+        if (isParsing || isRefreshingChannels || registry.get().getAll().isEmpty()){
+            return;
+        }
+        isRefreshingChannels = true;
+        //the user did not ask for this refresh, so a failure is only logged and the shown channels are kept
+        startChannelWorker(Worker.channelRefresher(registry.get()));
     }
 
     /**
-     * Method that will be called when the channels are available, it will use swing utilities to make the update
-     * on the edt thread.
+     * Method that will be called on the edt thread when the channels are available, it will apply the changes to
+     * the menu and to the channels that are shown or kept up to date.
      * @param channels the channels that are available
+     * @param changes the channels that were added, removed or changed
      */
     @Override
-    public void channelsAvailable(HashMap<String, ArrayList<ChannelInfo>> channels){
+    public void channelsAvailable(ChannelRegistry channels, ChannelDiff changes){
         isParsing = false;
-        //update the sorted channels
-        sortedChannels = channels;
-        //make the update on the edt thread
-        SwingUtilities.invokeLater(() -> mainWindow.updateChannelsMenu(sortedChannels, this));
+        isRefreshingChannels = false;
+        //publish the new registry
+        registry.set(channels);
+        if (changes.isEmpty()){
+            return;
+        }
+        mainWindow.updateChannelsMenu(channels, changes, this, this);
+        for (ChannelInfo channelInfo : changes.getRemoved()){
+            replaceChannel(channelInfo.getChannelId(), null);
+        }
+        for (ChannelInfo channelInfo : changes.getChanged()){
+            replaceChannel(channelInfo.getChannelId(), channelInfo);
+        }
+        if (!changes.getAdded().isEmpty()){
+            //warm up the schedules of the channels the user visits the most
+            prefetcher.warmUp(channels.getAll(), 5);
+        }
+    }
+
+    /**
+     * Method that will drop the view and the refreshes of a channel that is no longer in the channel list as it was.
+     * A changed channel on screen is shown again from its new details, a removed one takes the user home and is
+     * dropped from the guide of all channels.
+     * @param channelId the id of the channel
+     * @param replacement the channel as it is now, or null if it has been removed
+     */
+    private void replaceChannel(String channelId, ChannelInfo replacement){
+        boolean visible = channelId.equals(visibleChannelId);
+        if (visible && replacement == null){
+            homeEvent();
+        }
+        refreshScheduler.untrack(channelId);
+        if (replacement == null){
+            //a removed channel must not answer for the now and next card any more
+            GuideIndex.getInstance().remove(channelId);
+        }
+        mainWindow.removeChannelView(channelId);
+        if (visible && replacement != null){
+            showChannel(replacement);
+        }
     }
 
     /**
-     * Method that will be called when the schedule is available, it will use swing utilities to make the update
-     * on the edt thread.
-     * NOTE: that this method is synchronized since it can be called from multiple threads.
-     * @param channelName the name of the channel that has a schedule available
+     * Method that will be called on the edt thread when the schedule is available, it will update the channel view.
+     * @param channelId the id of the channel that has a schedule available
      */
     @Override
-    public synchronized void  scheduleAvailable(String channelName){
-        //make the update on the edt thread
-        SwingUtilities.invokeLater(() -> {
-            ChannelView currentChannelView = mainWindow.getChannelView(channelName);
-            if (currentChannelView != null ) {
-                currentChannelView.updateSchedule();
-            } else {
-                JOptionPane.showMessageDialog(mainWindow, "Kunde inte uppdatera kanalen",
-                        "Fel", JOptionPane.ERROR_MESSAGE);
-            }
-        });
+    public void scheduleAvailable(String channelId){
+        ChannelView currentChannelView = mainWindow.getChannelView(channelId);
+        //a prefetched channel that has not been opened has no view, its schedule is still stored in the channel
+        if (currentChannelView != null ) {
+            currentChannelView.updateSchedule();
+        }
+    }
+    /**
+     * Method that will be called on the edt thread when the schedule of a channel has slid forward, it will give the
+     * changes to the channel view.
+     * @param channelId the id of the channel that has a changed schedule
+     * @param changes the changes of the schedule
+     * @param index the index of the new schedule
+     */
+    @Override
+    public void scheduleChanged(String channelId, ScheduleDiff changes, ScheduleIndex index){
+        ChannelView currentChannelView = mainWindow.getChannelView(channelId);
+        if (currentChannelView != null) {
+            currentChannelView.applyChanges(changes, index);
+        }
+    }
+    /**
+     * Method that will be called on the edt thread with programs of a schedule that is still being parsed, the rows
+     * are added to the channel view directly.
+     * @param channelId the id of the channel the programs belong to
+     * @param programs the next programs of the schedule
+     */
+    @Override
+    public void programsAvailable(String channelId, List<Program> programs){
+        ChannelView currentChannelView = mainWindow.getChannelView(channelId);
+        if (currentChannelView != null) {
+            currentChannelView.appendPrograms(programs);
+        }
     }
     /**
-     * Method that will be called when the timer has expired and trigger an updateEvent on the edt thread
+     * Method that will be called on the edt thread when a new list of what is on every channel has been fetched, it
+     * will update the card on the home page.
+     * @param nowAndNext one entry per channel
      */
     @Override
-    public void update() {
-        SwingUtilities.invokeLater(this::updateEvent);
+    public void nowAndNextAvailable(List<NowAndNext> nowAndNext){
+        mainWindow.getNowAndNextView().update(nowAndNext);
     }
     /**
-     * Method that will be called when an error has occurred, it will display an error message on the edt thread
-     * NOTE: that this method is synchronized since it can be called from multiple threads.
+     * Method that will be called on the edt thread when one or more errors have occurred, it will display the error
+     * message. The event bus has already folded the errors into one message.
      * @param errorMessage the error message to display
      */
-    @Override public synchronized void errorOccurred(String errorMessage){
-        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(mainWindow, errorMessage, "fel", JOptionPane.ERROR_MESSAGE));
+    @Override public void errorOccurred(String errorMessage){
         if (errorMessage.contains("api.sr.se")){
             networkErrorOccurred = true;
         }
+        JOptionPane.showMessageDialog(mainWindow, errorMessage, "fel", JOptionPane.ERROR_MESSAGE);
     }
     /**
      * Method that will be called when a program is double-clicked, it will display a detailed view of the program
@@ -1,319 +1,371 @@
 package se.umu.cs.appjava.model;
 
-import javax.swing.*;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * A class that will parse the api and return the information in a more usable format.
- * The class can both parse channels and scheduledepisodes, depending on what is passed in as a parameter.
+ * The class can parse channels, scheduledepisodes and the bulk "right now" list of what is on every channel,
+ * depending on what is passed in as a parameter.
+ * The documents are read with a streaming StAX reader. The reader keeps track of how deep it is so only the elements
+ * that are direct children of a channel or scheduledepisode are read as fields, and the text of each field is collected
+ * in a buffer that is reused for every record, so text that arrives in several pieces is never cut off.
  * * @author Jonatan Westling
  * * @version 1.0
  * * @date 2024-01-05
  */
 
-public class ApiParser extends DefaultHandler {
-    private String channelName;
-    private String channelId;
-    private String imageURL;
+public class ApiParser {
+    //the factory is only configured once per thread and then reused for every document
+    private static final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    });
+    //the fields of a channel, the name and id are attributes of the channel element
+    private static final String[] CHANNEL_FIELDS = {"image", "tagline", "channeltype"};
+    private static final int CHANNEL_IMAGE = 0;
+    private static final int CHANNEL_TAGLINE = 1;
+    private static final int CHANNEL_TYPE = 2;
+    //the fields of a scheduledepisode
+    private static final String[] EPISODE_FIELDS = {"episodeid", "title", "description", "starttimeutc", "endtimeutc", "imageurl"};
+    private static final int EPISODE_ID = 0;
+    private static final int EPISODE_TITLE = 1;
+    private static final int EPISODE_DESCRIPTION = 2;
+    private static final int EPISODE_START = 3;
+    private static final int EPISODE_END = 4;
+    private static final int EPISODE_IMAGE = 5;
+    //the episodes of a channel in the right now list, in the order they are kept in a NowAndNext
+    private static final String[] RIGHT_NOW_EPISODES = {"currentscheduledepisode", "nextscheduledepisode"};
     private String link;
-    private String channelType;
-    private String tagline;
-    private String episodeId;
-    private String title;
-    private String description;
-    private String startTime;
-    private String endTime;
-    private boolean parsingChannels;
-    private boolean isImage;
-    private boolean isTagline;
-    private boolean isChannelType;
-    private boolean isEpisodeId;
-    private boolean isTitle;
-    private boolean isDescription;
-    private boolean isStartTime;
-    private boolean isEndTime;
-    private ImageIcon image;
+    private Mode mode;
+    //one buffer per field, reused for every record
+    private final StringBuilder[] fieldText;
+    private final boolean[] fieldSeen;
     //a list of all channels with necessary information
     private ArrayList<ChannelInfo> channels;
     private ArrayList<Program> programs;
+    private ArrayList<NowAndNext> nowAndNext;
+    //told about every program as soon as it has been parsed, can be null
+    private Consumer<Program> programListener;
+    private final HttpTransport transport;
+    private final ResponseCache responseCache;
 
     /**
-     * Constructor for the ApiParser
+     * Constructor for the ApiParser that uses the shared transport
      */
     public ApiParser() {
-        channelId = "";
-        channelName = "";
-        isImage = false;
-        isTagline = false;
-        isChannelType = false;
+        this(HttpTransport.getInstance());
+    }
+
+    /**
+     * Constructor for the ApiParser
+     * @param transport the transport to fetch the api with
+     */
+    public ApiParser(HttpTransport transport) {
+        this.transport = transport;
+        this.responseCache = ResponseCache.getInstance();
+        fieldText = new StringBuilder[Math.max(CHANNEL_FIELDS.length, EPISODE_FIELDS.length)];
+        for (int i = 0; i < fieldText.length; i++) {
+            fieldText[i] = new StringBuilder();
+        }
+        fieldSeen = new boolean[fieldText.length];
         link = "";
         channels = new ArrayList<>();
-        parsingChannels = true;
+        mode = Mode.CHANNELS;
         programs = new ArrayList<>();
+        nowAndNext = new ArrayList<>();
     }
 
     /**
-     * Method that will parse the api and return a list of channels
+     * Method that will parse the api and return a list of channels. If the link has been parsed before the request
+     * is made conditional, and when the server answers 304 or fails the previously parsed result is used instead.
      *
      * @param link the link to the api
      */
-    public void parse(String link) throws IOException, ParserConfigurationException, SAXException {
+    public void parse(String link) throws IOException, XMLStreamException {
         //get the link to visit
         this.link = link;
-        //check if we are parsing channels or scheduledepisodes
-        parsingChannels = !link.contains("scheduledepisodes");
-        HttpURLConnection connection = null;
-
-            URL url = new URL(link);
-            connection = (HttpURLConnection) url.openConnection();
-            //obtain response code
-            int responseCode = connection.getResponseCode();
-            if (responseCode != 200) {
-                throw new RuntimeException("HttpResponseCode: " + responseCode);
+        //check if we are parsing channels, scheduledepisodes or what is on right now
+        mode = Mode.of(link);
+        ResponseCache.Entry cached = responseCache.get(link);
+        HttpResponse<InputStream> response;
+        try {
+            response = transport.send(link, conditionalHeaders(cached));
+        } catch (IOException e) {
+            if (cached == null) {
+                throw e;
             }
-
-            SAXParserFactory factory = SAXParserFactory.newInstance();
-            SAXParser parser = factory.newSAXParser();
-            parser.parse(connection.getInputStream(), this);
-
-        connection.disconnect();
+            //stale if error, better to show the old schedule than nothing
+            restore(cached);
+            responseCache.recordStale();
+            return;
+        }
+        int responseCode = response.statusCode();
+        if (responseCode == 304 && cached != null) {
+            //nothing has changed so there is nothing to parse
+            response.body().close();
+            restore(cached);
+            responseCache.recordNotModified();
+            return;
+        }
+        if (responseCode != 200) {
+            response.body().close();
+            if (cached != null && responseCode >= 500) {
+                restore(cached);
+                responseCache.recordStale();
+                return;
+            }
+            throw new RuntimeException("HttpResponseCode: " + responseCode);
+        }
+        try (InputStream body = transport.decode(response)) {
+            parseDocument(body);
+        }
+        responseCache.recordMiss();
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+        switch (mode) {
+            case CHANNELS -> responseCache.put(link, new ResponseCache.Entry(etag, lastModified, null, channels));
+            case SCHEDULE -> responseCache.put(link, new ResponseCache.Entry(etag, lastModified, programs, null));
+            case RIGHT_NOW -> responseCache.put(link, ResponseCache.Entry.ofNowAndNext(etag, lastModified, nowAndNext));
+        }
     }
 
     /**
-     * Method that will run before parsing first element and will determine what we are parsing
+     * Method that will build the validator headers for a conditional request
+     *
+     * @param cached the cached entry for the link or null
+     * @return the headers to send
      */
-    @Override
-    public void startDocument() {
-        if (parsingChannels) {
-            channels = new ArrayList<>();
-        } else {
-            programs = new ArrayList<>();
+    private Map<String, String> conditionalHeaders(ResponseCache.Entry cached) {
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                headers.put("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
         }
+        return headers;
     }
 
     /**
-     * Method that will run when the parser reaches a new element
-     * @param uri the uri of the element
-     * @param localName the local name of the element
-     * @param qName the qName of the element
-     * @param attributes the attributes of the element
+     * Method that will put back a cached result as if it had just been parsed
+     *
+     * @param cached the cached entry for the link
      */
-    @Override
-    public void startElement(String uri, String localName, String qName, Attributes attributes) {
-        //maybe need error handling if there are channels that miss subsections
-        if (parsingChannels) {
-            startElementParsingChannels(qName, attributes);
-        } else {
-            startElementParsingSchedule(qName, attributes);
+    private void restore(ResponseCache.Entry cached) {
+        switch (mode) {
+            case CHANNELS -> channels = cached.getChannels();
+            case SCHEDULE -> {
+                programs = cached.getPrograms();
+                if (programListener != null) {
+                    programs.forEach(programListener);
+                }
+            }
+            case RIGHT_NOW -> nowAndNext = cached.getNowAndNext();
         }
     }
 
     /**
-     * Method that will run when the parser reaches a new element that is a channel
-     *
-     * @param qName      the qName of the element
-     * @param attributes the attributes of the element
+     * Method that will set a listener that is told about every program as soon as it has been parsed, so the
+     * schedule can be shown while the rest of the document is still being read.
+     * @param programListener the listener or null to not be told
      */
-    private void startElementParsingChannels(String qName, Attributes attributes) {
-        switch (qName) {
-            case "channel":
-                //we in beginning of a new channel, gather info about the channel
-                channelName = attributes.getValue("name");
-                channelId = attributes.getValue("id");
-                break;
-            case "image":
-                isImage = true;
-                break;
-            case "tagline":
-                isTagline = true;
-                break;
-            case "channeltype":
-                isChannelType = true;
-                break;
+    public void setProgramListener(Consumer<Program> programListener) {
+        this.programListener = programListener;
+    }
 
-        }
+    /**
+     * Getter for the transport the parser fetches with
+     * @return the transport
+     */
+    public HttpTransport getTransport() {
+        return transport;
     }
 
     /**
-     * Method that will run when the parser reaches a new element that is a scheduledepisode
+     * Method that will read a whole document from a stream. Only elements one level below a record (a channel or a
+     * scheduledepisode) are read as fields, so elements with the same name further down, such as the url of the live
+     * audio, are ignored. In the right now list the fields are one level below the current or next episode of a channel.
      *
-     * @param qName      the qName of the element
-     * @param attributes the attributes of the element
+     * @param body the document
      */
-    private void startElementParsingSchedule(String qName, Attributes attributes) {
-        switch (qName) {
-            case "episodeid":
-                isEpisodeId = true;
-                break;
-            case "title":
-                isTitle = true;
-                break;
-            case "description":
-                isDescription = true;
-                break;
-            case "starttimeutc":
-                isStartTime = true;
-                break;
-            case "endtimeutc":
-                isEndTime = true;
-                break;
-            case "imageurl":
-                isImage = true;
-                break;
+    void parseDocument(InputStream body) throws XMLStreamException {
+        String recordName = mode == Mode.SCHEDULE ? "scheduledepisode" : "channel";
+        String[] fieldNames = mode == Mode.CHANNELS ? CHANNEL_FIELDS : EPISODE_FIELDS;
+        switch (mode) {
+            case CHANNELS -> channels = new ArrayList<>();
+            case SCHEDULE -> programs = new ArrayList<>();
+            case RIGHT_NOW -> nowAndNext = new ArrayList<>();
+        }
+        XMLStreamReader reader = inputFactory.get().createXMLStreamReader(body);
+        try {
+            int depth = 0;
+            //the depth of the record being read, or -1 when outside a record
+            int recordDepth = -1;
+            //the depth of the element the fields belong to, or -1 when not inside one
+            int fieldsDepth = -1;
+            //the field being read, or -1 when not inside a field
+            int field = -1;
+            String channelName = null;
+            String channelId = null;
+            //the current and next episode of a channel in the right now list
+            Program[] episodes = new Program[RIGHT_NOW_EPISODES.length];
+            int episode = -1;
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (recordDepth == -1) {
+                            if (name.equals(recordName)) {
+                                recordDepth = depth;
+                                startRecord();
+                                if (mode != Mode.SCHEDULE) {
+                                    channelName = reader.getAttributeValue(null, "name");
+                                    channelId = reader.getAttributeValue(null, "id");
+                                }
+                                if (mode == Mode.RIGHT_NOW) {
+                                    Arrays.fill(episodes, null);
+                                } else {
+                                    fieldsDepth = depth;
+                                }
+                            }
+                        } else if (fieldsDepth == -1) {
+                            //a channel in the right now list, look for its current and next episode
+                            if (depth == recordDepth + 1) {
+                                episode = indexOf(RIGHT_NOW_EPISODES, name);
+                                if (episode != -1) {
+                                    fieldsDepth = depth;
+                                    startRecord();
+                                }
+                            }
+                        } else if (depth == fieldsDepth + 1) {
+                            field = indexOf(fieldNames, name);
+                            if (field != -1) {
+                                fieldSeen[field] = true;
+                            }
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (field != -1) {
+                            fieldText[field].append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (fieldsDepth != -1 && depth == fieldsDepth + 1) {
+                            field = -1;
+                        } else if (depth == recordDepth) {
+                            switch (mode) {
+                                case CHANNELS -> endChannel(channelName, channelId);
+                                case SCHEDULE -> endEpisode();
+                                case RIGHT_NOW -> nowAndNext.add(new NowAndNext(channelId, channelName, episodes[0], episodes[1]));
+                            }
+                            recordDepth = -1;
+                            fieldsDepth = -1;
+                        } else if (depth == fieldsDepth) {
+                            //the current or next episode of a channel in the right now list has ended
+                            episodes[episode] = buildProgram();
+                            fieldsDepth = -1;
+                        }
+                        depth--;
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
         }
     }
 
     /**
-     * Method that will catch the characters between the start and end node
-     *
-     * @param ch     the characters of the element
-     * @param start  the start index of the characters
-     * @param length the length of the characters
+     * Method that will clear the field buffers when a new record starts
      */
-    @Override
-    public void characters(char[] ch, int start, int length) {
-        if (parsingChannels) {
-            charactersParsingChannels(ch, start, length);
-        } else {
-            charactersParsingSchedule(ch, start, length);
+    private void startRecord() {
+        for (int i = 0; i < fieldText.length; i++) {
+            fieldText[i].setLength(0);
+            fieldSeen[i] = false;
         }
     }
 
     /**
-     * Method that will catch the characters between the start and end node if it is parsing channels
+     * Method that will save a channel when its element ends. The image is only loaded when it is shown,
+     * so parsing never waits for it.
      *
-     * @param ch     the characters of the element
-     * @param start  the start index of the characters
-     * @param length the length of the characters
+     * @param channelName the name attribute of the channel
+     * @param channelId the id attribute of the channel
      */
-    private void charactersParsingChannels(char[] ch, int start, int length) {
-        if (isImage) {
-            imageURL = new String(ch, start, length);
-        } else if (isTagline) {
-            tagline = new String(ch, start, length);
-        } else if (isChannelType) {
-            channelType = new String(ch, start, length);
-        }
+    private void endChannel(String channelName, String channelId) {
+        ChannelInfo currentChannel = new ChannelInfo(channelName, channelId, text(CHANNEL_IMAGE),
+                text(CHANNEL_TYPE), text(CHANNEL_TAGLINE));
+        channels.add(currentChannel);
     }
 
     /**
-     * Method that will catch the characters between the start and end node if it is parsing schedule
-     *
-     * @param ch     the characters of the element
-     * @param start  the start index of the characters
-     * @param length the length of the characters
+     * Method that will save a program when its scheduledepisode element ends. Episodes without times can not be
+     * placed in the schedule so they are skipped.
      */
-    private void charactersParsingSchedule(char[] ch, int start, int length) {
-        if (isEpisodeId) {
-            episodeId = new String(ch, start, length);
-        } else if (isTitle) {
-            title = new String(ch, start, length);
-        } else if (isDescription) {
-            description = new String(ch, start, length);
-        } else if (isStartTime) {
-            startTime = new String(ch, start, length);
-        } else if (isEndTime) {
-            endTime = new String(ch, start, length);
-        } else if (isImage) {
-            imageURL = new String(ch, start, length);
+    private void endEpisode() {
+        Program newProgram = buildProgram();
+        if (newProgram == null) {
+            return;
+        }
+        programs.add(newProgram);
+        if (programListener != null) {
+            programListener.accept(newProgram);
         }
     }
 
     /**
-     * Method that will run when the parser reaches the end of an element. The method will reset the flags
+     * Method that will build a program from the episode fields of the current record
      *
-     * @param uri       the uri of the element
-     * @param localName the local name of the element
-     * @param qName     the qName of the element
+     * @return the program or null if the episode has no times
      */
-    @Override
-    public void endElement(String uri, String localName, String qName) {
-        //reset flag save information
-        if (parsingChannels) {
-            endElementParsingChannels(qName);
-        } else {
-            endElementParsingSchedule(qName);
+    private Program buildProgram() {
+        String startTime = text(EPISODE_START);
+        String endTime = text(EPISODE_END);
+        if (startTime == null || endTime == null) {
+            return null;
         }
+        return new Program(text(EPISODE_TITLE), text(EPISODE_ID), text(EPISODE_DESCRIPTION),
+                startTime, endTime, text(EPISODE_IMAGE));
     }
 
     /**
-     * Method that will reset flags and save information if it is parsing channels depending on the qName.
+     * Method that will return the text of a field of the current record
      *
-     * @param qName the qName of the element
+     * @param field the index of the field
+     * @return the text or null if the record did not have the field
      */
-    private void endElementParsingChannels(String qName) {
-        switch (qName) {
-            case "channel":
-                URL url = null;
-                try {
-                    url = new URL(imageURL);
-                } catch (MalformedURLException e) {
-                    //handle exception better...
-                    System.out.println("Error: creating image url for channel");
-                }
-                if (url != null) {
-                    image = new ImageIcon(url);
-                }
-                //add the current channel to the list of channels
-                ChannelInfo currentChannel = new ChannelInfo(channelName, channelId, image, channelType, tagline);
-                channels.add(currentChannel);
-                break;
-
-            case "image":
-                isImage = false;
-                break;
-            case "tagline":
-                isTagline = false;
-                break;
-            case "channeltype":
-                isChannelType = false;
-                break;
-
-        }
+    private String text(int field) {
+        return fieldSeen[field] ? fieldText[field].toString().trim() : null;
     }
 
     /**
-     * Method that will reset flags and save information if it is parsing schedule depending on the qName.
+     * Method that will find the index of a field name
      *
-     * @param qName the qName of the element
+     * @param fieldNames the names of the fields
+     * @param name the name of the element
+     * @return the index or -1 if the element is not a field
      */
-    private void endElementParsingSchedule(String qName) {
-        switch (qName) {
-            case "scheduledepisode":
-                Program newProgram = new Program(title, episodeId, description, startTime, endTime, imageURL);
-                programs.add(newProgram);
-                break;
-            case "episodeid":
-                isEpisodeId = false;
-                break;
-            case "title":
-                isTitle = false;
-                break;
-            case "description":
-                isDescription = false;
-                break;
-            case "starttimeutc":
-                isStartTime = false;
-                break;
-            case "endtimeutc":
-                isEndTime = false;
-                break;
-            case "imageurl":
-                isImage = false;
-                break;
+    private static int indexOf(String[] fieldNames, String name) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].equals(name)) {
+                return i;
+            }
         }
+        return -1;
     }
 
     /**
@@ -326,23 +378,34 @@ public class ApiParser extends DefaultHandler {
     }
 
     /**
-     * Method that will return a map of all channels sorted by channel type
+     * Method that will return a registry of all channels indexed by id, name and channel type
+     *
+     * @return a registry of all channels
+     */
+    public ChannelRegistry getChannelRegistry() {
+        return new ChannelRegistry(channels);
+    }
+
+    /**
+     * Method that will return what is on every channel right now and what comes next
      *
-     * @return a map of all channels sorted by channel type where the key is the channel type
-     * and the value is a list of the channels.
+     * @return one entry per channel in the order the api sent them
+     */
+    public ArrayList<NowAndNext> getNowAndNext() {
+        return nowAndNext;
+    }
+
+    /**
+     * The kinds of documents the parser can read, decided from the link
      */
-    public LinkedHashMap<String, ArrayList<ChannelInfo>> getHasMapOfSortedChannels() {
-        //create the map
-        LinkedHashMap<String, ArrayList<ChannelInfo>> channelTypeMap = new LinkedHashMap<>();
-        for (ChannelInfo channel : channels) {
-            String type = channel.getChannelType();
-            //if map does not contain the key add it and create a new list for those channels
-            if (!channelTypeMap.containsKey(type)) {
-                channelTypeMap.put(type, new ArrayList<>());
+    private enum Mode {
+        CHANNELS, SCHEDULE, RIGHT_NOW;
+
+        private static Mode of(String link) {
+            if (link.contains("scheduledepisodes/rightnow")) {
+                return RIGHT_NOW;
             }
-            //add the channel to the list of channels
-            channelTypeMap.get(type).add(channel);
+            return link.contains("scheduledepisodes") ? SCHEDULE : CHANNELS;
         }
-        return channelTypeMap;
     }
 }
@@ -0,0 +1,108 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class that finds what has changed between two versions of the channel list, so the menu only has to touch the
+ * channels that were added, removed or changed instead of being built again. Channels are matched by id, and a
+ * channel is changed when the new registry has another instance for it, which is only the case when its details
+ * have changed since the registry keeps the instances of the channels that did not change.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ChannelDiff {
+    private final ChannelRegistry before;
+    private final ChannelRegistry after;
+    private final List<ChannelInfo> added;
+    private final List<ChannelInfo> removed;
+    private final List<ChannelInfo> changed;
+
+    private ChannelDiff(ChannelRegistry before, ChannelRegistry after, List<ChannelInfo> added,
+                        List<ChannelInfo> removed, List<ChannelInfo> changed){
+        this.before = before;
+        this.after = after;
+        this.added = Collections.unmodifiableList(added);
+        this.removed = Collections.unmodifiableList(removed);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * Method that will find the changes between two channel lists
+     * @param before the channels that are shown now
+     * @param after the new channels
+     * @return the changes
+     */
+    public static ChannelDiff between(ChannelRegistry before, ChannelRegistry after){
+        ArrayList<ChannelInfo> added = new ArrayList<>();
+        ArrayList<ChannelInfo> removed = new ArrayList<>();
+        ArrayList<ChannelInfo> changed = new ArrayList<>();
+        for (ChannelInfo channel : after.getAll()) {
+            ChannelInfo old = before.getById(channel.getChannelId());
+            if (old == null) {
+                added.add(channel);
+            } else if (old != channel) {
+                changed.add(channel);
+            }
+        }
+        for (ChannelInfo channel : before.getAll()) {
+            if (after.getById(channel.getChannelId()) == null) {
+                removed.add(channel);
+            }
+        }
+        return new ChannelDiff(before, after, added, removed, changed);
+    }
+
+    /**
+     * Method that will join these changes with the changes that came after them
+     * @param next the changes from the channels these changes lead to
+     * @return the changes from the channels before these changes to the channels after the next ones
+     */
+    public ChannelDiff then(ChannelDiff next){
+        return between(before, next.after);
+    }
+
+    /**
+     * Method that will check if there are any changes at all
+     * @return true if the channel lists are the same
+     */
+    public boolean isEmpty(){
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    /**
+     * Method that will collect the channel types that have a channel that was added, removed or changed, a changed
+     * channel counts for both the type it had and the type it has now
+     * @return the types
+     */
+    public Set<String> getChannelTypes(){
+        LinkedHashSet<String> types = new LinkedHashSet<>();
+        added.forEach(channel -> types.add(channel.getChannelType()));
+        removed.forEach(channel -> types.add(channel.getChannelType()));
+        for (ChannelInfo channel : changed) {
+            types.add(before.getById(channel.getChannelId()).getChannelType());
+            types.add(channel.getChannelType());
+        }
+        return types;
+    }
+
+    /**
+     * Getters for the changes
+     * @return the channels that are new, the channels that are gone as they were, and the channels that have changed
+     * as they are now, each in api order
+     */
+    public List<ChannelInfo> getAdded(){
+        return added;
+    }
+    public List<ChannelInfo> getRemoved(){
+        return removed;
+    }
+    public List<ChannelInfo> getChanged(){
+        return changed;
+    }
+}
@@ -1,11 +1,19 @@
 package se.umu.cs.appjava.model;
-import javax.swing.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * A class that will hold the information about a channel. It will hold the name, id, image, type and tagline and the
+ * A class that will hold the information about a channel. It will hold the name, id, image url, type and tagline and the
  * schedule for the channel if it is cached. The class have getters for all the information, so it can get accessed when
  * needed. It also has a setter for the schedule, so it can be cached when a user have visited the channel.
+ * The channel also remembers how far its schedule reaches, which grows as the user scrolls to the edges of it, and
+ * keeps the schedule as a window that slides with the clock: programs that fall out of the window are dropped from
+ * the start and only the end of the window is fetched again.
+ * The schedule is published as immutable, versioned snapshots through an atomic reference, so it can be read from any
+ * thread without locks and a refresh never blocks a reader. A change builds the next snapshot from the one it read and
+ * only publishes it if no other change was published meanwhile, otherwise it starts over from the newer snapshot.
  *
  * @author Jonatan Westling
  * @version 2.0
@@ -14,18 +22,17 @@ import java.util.ArrayList;
 public class ChannelInfo {
     private final String channelName;
     private final String channelId;
-    private final ImageIcon image;
+    private final String imageUrl;
     private final String channelType;
     private final String tagline;
-    private boolean scheduleIsCached;
-    private ArrayList<Program> schedule;
-    public ChannelInfo(String channelName, String channelId, ImageIcon image, String channelType, String tagline){
+    private final AtomicReference<ScheduleSnapshot> snapshot = new AtomicReference<>(ScheduleSnapshot.EMPTY);
+    private final AtomicReference<ScheduleWindow> window = new AtomicReference<>(ScheduleWindow.initial());
+    public ChannelInfo(String channelName, String channelId, String imageUrl, String channelType, String tagline){
         this.channelName = channelName;
         this.channelId = channelId;
-        this.image = image;
+        this.imageUrl = imageUrl;
         this.channelType = channelType;
         this.tagline = tagline;
-        this.scheduleIsCached = false;
     }
 
     /**
@@ -44,35 +51,209 @@ public class ChannelInfo {
     public String getName(){
         return channelName;
     }
-    public ImageIcon getImage(){
-        return image;
+    public String getImageUrl(){
+        return imageUrl;
     }
     public String getTagline(){
         return tagline;
     }
 
     /**
-     * A setter for the schedule, so it can be cashed when a user have visited the channel
-     * @param schedule the parsed schedule to set
+     * Method that will check if another channel has the same details as this one, the schedules are not compared
+     * @param other the other channel
+     * @return true if the id, name, image, type and tagline are the same
      */
-    public synchronized void  setSchedule(ArrayList<Program> schedule){
-        this.schedule = schedule;
-        this.scheduleIsCached = true;
+    public boolean hasSameDetails(ChannelInfo other){
+        return channelId.equals(other.channelId) && Objects.equals(channelName, other.channelName)
+                && Objects.equals(imageUrl, other.imageUrl) && Objects.equals(channelType, other.channelType)
+                && Objects.equals(tagline, other.tagline);
+    }
+
+    /**
+     * Method that will take over the schedule and window of the channel this one replaces, so a channel whose details
+     * changed in a new channel list does not have to load its schedule again
+     * @param previous the channel with the same id in the old channel list
+     */
+    void adoptSchedule(ChannelInfo previous){
+        window.set(previous.window.get());
+        snapshot.set(previous.snapshot.get());
+    }
+
+    /**
+     * A setter for the schedule, so it can be cashed when a user have visited the channel. The schedule is also
+     * indexed by time and the index is shared with the guide of all channels.
+     * @param schedule the parsed schedule to set, in start order
+     */
+    public void setSchedule(List<Program> schedule){
+        ScheduleSnapshot current;
+        ScheduleSnapshot next;
+        do {
+            current = snapshot.get();
+            next = current.next(schedule, current.getLoadedUntil());
+        } while (!snapshot.compareAndSet(current, next));
+        publish(next);
+    }
+
+    /**
+     * A method that will put the programs of a part of the schedule into the schedule. The programs that start within
+     * the range are replaced and the programs outside it are kept, so a part that was loaded later is not lost when
+     * another part is fetched again.
+     * @param programs the programs that start within the range, in start order
+     * @param from the start of the range in epoch seconds, not included
+     * @param to the end of the range in epoch seconds, not included
+     */
+    public void mergeSchedule(List<Program> programs, long from, long to){
+        ScheduleSnapshot current;
+        ScheduleSnapshot next;
+        do {
+            current = snapshot.get();
+            List<Program> programsNow = current.getPrograms();
+            ArrayList<Program> merged = new ArrayList<>(programsNow.size() + programs.size());
+            int i = 0;
+            //keep the programs before the range
+            while (i < programsNow.size() && programsNow.get(i).getStartEpochSecond() <= from) {
+                merged.add(programsNow.get(i++));
+            }
+            merged.addAll(programs);
+            //skip the programs that are replaced
+            while (i < programsNow.size() && programsNow.get(i).getStartEpochSecond() < to) {
+                i++;
+            }
+            //keep the programs after the range
+            merged.addAll(programsNow.subList(i, programsNow.size()));
+            next = current.next(merged, Math.max(current.getLoadedUntil(), to));
+        } while (!snapshot.compareAndSet(current, next));
+        publish(next);
+    }
+
+    /**
+     * A method that will slide the schedule forward. The programs that start at or before the start of the window
+     * are dropped, the programs that start within the range at the end are replaced and the rest are kept.
+     * @param windowStart the start of the window in epoch seconds
+     * @param tail the programs that start within the range at the end, in start order
+     * @param from the start of the range at the end in epoch seconds, not included, not before the window start
+     * @param to the end of the range at the end in epoch seconds, not included
+     * @return the changes that turn the old schedule into the new one and the index of the new schedule
+     */
+    public Slide slide(long windowStart, List<Program> tail, long from, long to){
+        ScheduleSnapshot current;
+        ScheduleSnapshot next;
+        ScheduleDiff changes;
+        do {
+            current = snapshot.get();
+            List<Program> programsNow = current.getPrograms();
+            int dropped = 0;
+            while (dropped < programsNow.size() && programsNow.get(dropped).getStartEpochSecond() <= windowStart) {
+                dropped++;
+            }
+            int tailStart = dropped;
+            while (tailStart < programsNow.size() && programsNow.get(tailStart).getStartEpochSecond() <= from) {
+                tailStart++;
+            }
+            int tailEnd = tailStart;
+            while (tailEnd < programsNow.size() && programsNow.get(tailEnd).getStartEpochSecond() < to) {
+                tailEnd++;
+            }
+            ArrayList<Program> slid = new ArrayList<>(programsNow.size() - dropped + tail.size());
+            slid.addAll(programsNow.subList(dropped, tailStart));
+            slid.addAll(tail);
+            slid.addAll(programsNow.subList(tailEnd, programsNow.size()));
+            changes = ScheduleDiff.slide(programsNow.subList(0, dropped), tailStart - dropped,
+                    programsNow.subList(tailStart, tailEnd), tail);
+            next = current.next(slid, Math.max(current.getLoadedUntil(), to));
+        } while (!snapshot.compareAndSet(current, next));
+        publish(next);
+        return new Slide(changes, next.getIndex());
+    }
+
+    /**
+     * A method that will share a new snapshot with the guide of all channels
+     * @param published the snapshot that was published
+     */
+    private void publish(ScheduleSnapshot published){
+        GuideIndex.getInstance().put(channelId, published.getIndex());
+    }
+
+    /**
+     * A getter for the latest snapshot of the schedule, it never blocks
+     * @return the snapshot, empty if there is no schedule yet
+     */
+    public ScheduleSnapshot getSnapshot(){
+        return snapshot.get();
+    }
+
+    /**
+     * A getter for the end of the part of the schedule that has been fetched
+     * @return the end in epoch seconds, 0 if nothing has been fetched through the window yet
+     */
+    public long getLoadedUntil(){
+        return snapshot.get().getLoadedUntil();
+    }
+
+    /**
+     * Getter for how far the schedule reaches
+     * @return the window of the schedule
+     */
+    public ScheduleWindow getWindow(){
+        return window.get();
+    }
+
+    /**
+     * A method that will grow the window by a day at an edge. The window is grown from the one that is there when it
+     * is called, so the past and the future can grow at the same time without one of them being lost.
+     * @param edge the edge to grow at
+     * @return the grown window, the same window if it already reaches as far as it may
+     */
+    public ScheduleWindow growWindow(ScheduleWindow.Edge edge){
+        return window.updateAndGet(current -> current.grow(edge));
+    }
+
+    /**
+     * A getter for the time index of the latest snapshot of the schedule
+     * @return the index, empty if there is no schedule yet
+     */
+    public ScheduleIndex getScheduleIndex(){
+        return snapshot.get().getIndex();
     }
 
     /**
      * A getter for the schedule of the channel
-     * @return the schedule of the channel
+     * @return the programs of the latest snapshot in start order, they can not be changed
      */
-    public synchronized ArrayList<Program> getSchedule(){
-        return schedule;
+    public List<Program> getSchedule(){
+        return snapshot.get().getPrograms();
     }
 
     /**
      * A method to check if the schedule is cashed or not
      * @return true or false
      */
-    public synchronized boolean isScheduleCached(){
-        return scheduleIsCached;
+    public boolean isScheduleCached(){
+        return snapshot.get().isCached();
+    }
+
+    /**
+     * Class that holds the changes of a slide together with the index of the schedule they lead to, the version of
+     * the index is one more than the version the changes start from
+     */
+    public static final class Slide {
+        private final ScheduleDiff changes;
+        private final ScheduleIndex index;
+
+        private Slide(ScheduleDiff changes, ScheduleIndex index){
+            this.changes = changes;
+            this.index = index;
+        }
+
+        /**
+         * Getters for the slide
+         * @return the changes and the index of the new schedule
+         */
+        public ScheduleDiff getChanges(){
+            return changes;
+        }
+        public ScheduleIndex getIndex(){
+            return index;
+        }
     }
 }
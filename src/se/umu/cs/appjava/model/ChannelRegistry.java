@@ -0,0 +1,113 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that holds all channels indexed by id, name and channel type. A registry never changes after it has been
+ * built, so when the channel list is refreshed a new registry is built and swapped in, and background threads and
+ * the EDT can read whichever registry they have without locks. Looking up a channel is a single map lookup.
+ * A refreshed registry keeps the instances of the channels that did not change, so their cached schedules and the
+ * views showing them stay valid.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ChannelRegistry {
+    public static final ChannelRegistry EMPTY = new ChannelRegistry(List.of());
+    private final List<ChannelInfo> channels;
+    private final Map<String, ChannelInfo> byId;
+    private final Map<String, ChannelInfo> byName;
+    private final Map<String, List<ChannelInfo>> byType;
+
+    /**
+     * Constructor for the registry
+     * @param channels the channels in the order the api sent them
+     */
+    public ChannelRegistry(List<ChannelInfo> channels){
+        HashMap<String, ChannelInfo> ids = new HashMap<>();
+        HashMap<String, ChannelInfo> names = new HashMap<>();
+        //keep the types in the order they first appear, as the menu is built in that order
+        LinkedHashMap<String, List<ChannelInfo>> types = new LinkedHashMap<>();
+        for (ChannelInfo channel : channels) {
+            ids.put(channel.getChannelId(), channel);
+            names.putIfAbsent(channel.getChannelName(), channel);
+            types.computeIfAbsent(channel.getChannelType(), type -> new ArrayList<>()).add(channel);
+        }
+        types.replaceAll((type, list) -> Collections.unmodifiableList(list));
+        this.channels = List.copyOf(channels);
+        this.byId = Collections.unmodifiableMap(ids);
+        this.byName = Collections.unmodifiableMap(names);
+        this.byType = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Method that will build a registry of these channels that keeps the instances of an older registry for the
+     * channels whose details have not changed. A channel that has changed takes over the schedule of the old one.
+     * @param previous the registry the channels are shown from now
+     * @return the new registry, in the order of this one
+     */
+    public ChannelRegistry reuse(ChannelRegistry previous){
+        ArrayList<ChannelInfo> reused = new ArrayList<>(channels.size());
+        for (ChannelInfo channel : channels) {
+            ChannelInfo old = previous.getById(channel.getChannelId());
+            if (old == null || old == channel) {
+                reused.add(channel);
+            } else if (old.hasSameDetails(channel)) {
+                reused.add(old);
+            } else {
+                channel.adoptSchedule(old);
+                reused.add(channel);
+            }
+        }
+        return new ChannelRegistry(reused);
+    }
+
+    /**
+     * Method that will find a channel by its id
+     * @param channelId the id of the channel
+     * @return the channel or null if there is no channel with the id
+     */
+    public ChannelInfo getById(String channelId){
+        return byId.get(channelId);
+    }
+
+    /**
+     * Method that will find a channel by its name
+     * @param channelName the name of the channel
+     * @return the channel or null if there is no channel with the name
+     */
+    public ChannelInfo getByName(String channelName){
+        return byName.get(channelName);
+    }
+
+    /**
+     * Method that will return the channels of a type
+     * @param channelType the type of the channels
+     * @return the channels of the type, empty if there are none
+     */
+    public List<ChannelInfo> getByType(String channelType){
+        return byType.getOrDefault(channelType, List.of());
+    }
+
+    /**
+     * Getter for the channels sorted by channel type
+     * @return a map where the key is the channel type and the value is a list of the channels, in api order
+     */
+    public Map<String, List<ChannelInfo>> getChannelsByType(){
+        return byType;
+    }
+
+    /**
+     * Getter for all channels
+     * @return all channels in api order
+     */
+    public List<ChannelInfo> getAll(){
+        return channels;
+    }
+}
@@ -0,0 +1,144 @@
+package se.umu.cs.appjava.model;
+
+/**
+ * Class that stops requests to a server that keeps failing. After a number of failures in a row the breaker opens
+ * and every request is refused at once for a while, so the caller falls back on cached data instead of waiting for
+ * timeouts. When the time is up one request is let through to test the server: if it works the breaker closes
+ * again, if it fails the breaker stays open twice as long as the last time, up to a maximum.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class CircuitBreaker {
+    private final int failureThreshold;
+    private final long baseOpenMillis;
+    private final long maxOpenMillis;
+    //guarded by this
+    private State state = State.CLOSED;
+    private int failuresInRow;
+    private long openMillis;
+    private long openUntil;
+    private boolean probing;
+    private long trips;
+    private long rejected;
+
+    /**
+     * The states of the breaker
+     */
+    public enum State {
+        CLOSED("stängd"), OPEN("öppen"), HALF_OPEN("halvöppen");
+
+        private final String label;
+
+        State(String label){
+            this.label = label;
+        }
+
+        /**
+         * Getter for the name of the state to show the user
+         * @return the name in swedish
+         */
+        public String getLabel(){
+            return label;
+        }
+    }
+
+    /**
+     * Constructor for the breaker
+     * @param failureThreshold the number of failures in a row that opens the breaker
+     * @param baseOpenMillis how long the breaker stays open the first time
+     * @param maxOpenMillis the longest the breaker stays open
+     */
+    public CircuitBreaker(int failureThreshold, long baseOpenMillis, long maxOpenMillis){
+        this.failureThreshold = failureThreshold;
+        this.baseOpenMillis = baseOpenMillis;
+        this.maxOpenMillis = Math.max(baseOpenMillis, maxOpenMillis);
+        this.openMillis = baseOpenMillis;
+    }
+
+    /**
+     * Method that will check if a request may be sent. When the breaker is half open only one request at a time is
+     * let through, and the caller must report how it went.
+     * @return true if the request may be sent
+     */
+    public synchronized boolean allowRequest(){
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() < openUntil) {
+                rejected++;
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probing) {
+                rejected++;
+                return false;
+            }
+            probing = true;
+        }
+        return true;
+    }
+
+    /**
+     * Method that will be called when the server answered
+     */
+    public synchronized void recordSuccess(){
+        failuresInRow = 0;
+        probing = false;
+        if (state != State.CLOSED) {
+            state = State.CLOSED;
+            openMillis = baseOpenMillis;
+        }
+    }
+
+    /**
+     * Method that will be called when a request failed
+     */
+    public synchronized void recordFailure(){
+        failuresInRow++;
+        if (state == State.HALF_OPEN) {
+            //the test request failed, wait longer this time
+            open(Math.min(maxOpenMillis, openMillis * 2));
+        } else if (state == State.CLOSED && failuresInRow >= failureThreshold) {
+            open(baseOpenMillis);
+        }
+    }
+
+    /**
+     * Method that will be called when a request was given up without an answer, so another one may test the server
+     */
+    public synchronized void recordCancelled(){
+        probing = false;
+    }
+
+    /**
+     * Method that will open the breaker, must hold the lock
+     * @param millis how long to stay open
+     */
+    private void open(long millis){
+        state = State.OPEN;
+        probing = false;
+        openMillis = millis;
+        openUntil = System.currentTimeMillis() + millis;
+        trips++;
+    }
+
+    /**
+     * Getters for the state of the breaker
+     * @return the state, the number of times it has opened and the number of requests it has refused
+     */
+    public synchronized State getState(){
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+    public synchronized long getTripCount(){
+        return trips;
+    }
+    public synchronized long getRejectedCount(){
+        return rejected;
+    }
+}
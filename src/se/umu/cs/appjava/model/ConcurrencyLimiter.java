@@ -0,0 +1,113 @@
+package se.umu.cs.appjava.model;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that limits how many requests are sent to a server at the same time, and finds the limit by itself from how
+ * the server answers. Every answer that comes back in good time raises the limit a little, about one more request per
+ * round trip, and an error or an answer that is much slower than the server usually is halves it, at most once per
+ * round trip. This way the limit climbs while the server keeps up and falls quickly when it starts to queue or fail.
+ * How fast the server usually is, is the fastest answer seen lately, it drifts up slowly so a server that has become
+ * slower for good is not punished forever.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ConcurrencyLimiter {
+    //an answer is slow when it takes this many times as long as the usual answer
+    private static final double SLOW_FACTOR = 2.0;
+    //and also at least this much longer, so a fast server is not punished for small jitter
+    private static final long SLOW_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    //how much of the difference the usual latency drifts towards a slower answer
+    private static final double BASELINE_DRIFT = 1.0 / 64;
+    private final int minLimit;
+    private final int maxLimit;
+    //guarded by this
+    private double limit;
+    private int inFlight;
+    private long baselineNanos = -1;
+    private long lastDecrease;
+    private long decreases;
+
+    /**
+     * Constructor for the limiter
+     * @param initialLimit the limit to start with
+     * @param minLimit the limit never goes below this
+     * @param maxLimit the limit never goes above this
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit){
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+    }
+
+    /**
+     * Method that will wait until one more request may be sent
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public synchronized void acquire() throws InterruptedIOException {
+        while (inFlight >= (int) limit) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting to send a request");
+            }
+        }
+        inFlight++;
+    }
+
+    /**
+     * Method that will be called when a request is done and adjust the limit from how it went
+     * @param latencyNanos the time until the answer came
+     * @param failed true if the request failed or the server answered with an error
+     */
+    public synchronized void release(long latencyNanos, boolean failed){
+        inFlight--;
+        if (!failed) {
+            if (baselineNanos < 0 || latencyNanos < baselineNanos) {
+                baselineNanos = latencyNanos;
+            } else {
+                baselineNanos += (long) ((latencyNanos - baselineNanos) * BASELINE_DRIFT);
+            }
+        }
+        boolean slow = baselineNanos >= 0
+                && latencyNanos > Math.max(baselineNanos * SLOW_FACTOR, baselineNanos + SLOW_MARGIN_NANOS);
+        if (failed || slow) {
+            long now = System.nanoTime();
+            //the requests of one bad round trip only halve the limit once
+            if (now - lastDecrease > Math.max(baselineNanos, 0)) {
+                limit = Math.max(minLimit, limit / 2);
+                lastDecrease = now;
+                decreases++;
+            }
+        } else {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Method that will be called when a request was given up without an answer, the limit is left as it is
+     */
+    public synchronized void cancel(){
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Getters for the state of the limiter
+     * @return the current limit, the number of requests on their way and the number of times the limit was lowered
+     */
+    public synchronized double getLimit(){
+        return limit;
+    }
+    public synchronized int getInFlight(){
+        return inFlight;
+    }
+    public synchronized long getDecreaseCount(){
+        return decreases;
+    }
+}
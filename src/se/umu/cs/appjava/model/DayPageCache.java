@@ -0,0 +1,171 @@
+package se.umu.cs.appjava.model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that remembers the parsed schedule page of a channel for a day, so a window that moves with the clock can be
+ * built from the pages it already has and only the pages that are missing or too old are fetched. How long a page can
+ * be trusted depends on how far its day is from today: a day that has passed does not change, the days ahead change
+ * now and then and today changes the most. A page is trusted for the shorter of the times its day had when it was
+ * fetched and has now, so a page of today that has become yesterday is not trusted for a whole day. The cache counts
+ * hits, misses and expired pages so the saving can be seen.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class DayPageCache {
+    private static final DayPageCache shared = new DayPageCache(512);
+    private static final long PAST_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long TODAY_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long TOMORROW_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final long LATER_TTL_MILLIS = TimeUnit.HOURS.toMillis(2);
+    private final LinkedHashMap<String, Page> pages;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    /**
+     * Constructor for the cache
+     * @param maxPages the number of pages to remember before the least recently used is forgotten
+     */
+    public DayPageCache(int maxPages){
+        pages = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Page> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Getter for the cache shared by all schedule builders
+     * @return the shared cache
+     */
+    public static DayPageCache getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will return the page of a channel for a day if it can still be trusted
+     * @param channelId the id of the channel
+     * @param day the day of the page
+     * @return the programs of the page, or null if the page is missing or too old
+     */
+    public List<Program> get(String channelId, LocalDate day){
+        Page page;
+        synchronized (this) {
+            page = pages.get(key(channelId, day));
+        }
+        if (page == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.currentTimeMillis() - page.fetchedAt > timeToLive(day, page.fetchedAt)) {
+            misses.incrementAndGet();
+            expired.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return page.programs;
+    }
+
+    /**
+     * Method that will remember the page of a channel for a day
+     * @param channelId the id of the channel
+     * @param day the day of the page
+     * @param programs the programs of the page
+     * @param fetchedAt when the page was fetched from the api, in epoch milliseconds
+     */
+    public void put(String channelId, LocalDate day, List<Program> programs, long fetchedAt){
+        Page page = new Page(List.copyOf(programs), fetchedAt);
+        synchronized (this) {
+            pages.put(key(channelId, day), page);
+        }
+    }
+
+    /**
+     * Method that will work out how long a page can be trusted, also used for pages read from the archive
+     * @param day the day of the page
+     * @param fetchedAt when the page was fetched, in epoch milliseconds
+     * @return the time in milliseconds
+     */
+    static long timeToLive(LocalDate day, long fetchedAt){
+        LocalDate today = LocalDate.now();
+        LocalDate fetchedOn = Instant.ofEpochMilli(fetchedAt).atZone(ZoneId.systemDefault()).toLocalDate();
+        return Math.min(timeToLive(ChronoUnit.DAYS.between(today, day)), timeToLive(ChronoUnit.DAYS.between(fetchedOn, day)));
+    }
+
+    /**
+     * Method that will give the time a page can be trusted from how far its day is from today
+     * @param daysFromToday negative for a day that has passed
+     * @return the time in milliseconds
+     */
+    private static long timeToLive(long daysFromToday){
+        if (daysFromToday < 0) {
+            return PAST_TTL_MILLIS;
+        } else if (daysFromToday == 0) {
+            return TODAY_TTL_MILLIS;
+        } else if (daysFromToday == 1) {
+            return TOMORROW_TTL_MILLIS;
+        }
+        return LATER_TTL_MILLIS;
+    }
+
+    private static String key(String channelId, LocalDate day){
+        return channelId + "/" + day;
+    }
+
+    /**
+     * Getters for the counters
+     * @return the number of lookups answered in each way
+     */
+    public long getHitCount(){
+        return hits.get();
+    }
+    public long getMissCount(){
+        return misses.get();
+    }
+    public long getExpiredCount(){
+        return expired.get();
+    }
+
+    /**
+     * Method that will work out the share of lookups that were answered from the cache
+     * @return the hit rate between 0 and 1
+     */
+    public double getHitRate(){
+        long lookups = getHitCount() + getMissCount();
+        return lookups == 0 ? 0 : (double) getHitCount() / lookups;
+    }
+
+    /**
+     * Method that will describe the counters for the statistics dialog
+     * @return a line with the counters
+     */
+    public String getStatistics(){
+        return "Dagcache: " + getHitCount() + " träffar, " + getMissCount() + " missar (" + getExpiredCount()
+                + " för gamla), träffgrad " + Math.round(getHitRate() * 100) + " %";
+    }
+
+    /**
+     * Class that holds one page and when it was fetched
+     */
+    private static class Page {
+        private final List<Program> programs;
+        private final long fetchedAt;
+
+        private Page(List<Program> programs, long fetchedAt){
+            this.programs = programs;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
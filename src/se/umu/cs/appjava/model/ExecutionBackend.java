@@ -0,0 +1,105 @@
+package se.umu.cs.appjava.model;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that decides which threads the fetch and parse work of the application runs on. The work is almost only
+ * waiting on the network, so it should not be limited to a small pool as the SwingWorker pool of ten threads is.
+ * On a Java version with virtual threads every task gets a virtual thread of its own, which costs almost nothing while
+ * it waits on a socket. On older versions the tasks run on a pool of daemon threads that grows with the work and lets
+ * idle threads go. Only the updates of the GUI are handed to the EDT, by the event bus or with invokeLater.
+ * How many fetches run at the same time is decided by the fetch scheduler, not by the number of threads.
+ * The backend can be chosen with the system property radioinfo.threads: "virtual", "platform" or "auto" (default),
+ * which uses virtual threads when the Java version has them.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ExecutionBackend {
+    private static final ExecutionBackend shared = new ExecutionBackend(System.getProperty("radioinfo.threads", "auto"));
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    /**
+     * Constructor for the backend
+     * @param mode "virtual", "platform" or "auto"
+     */
+    public ExecutionBackend(String mode){
+        ExecutorService virtualExecutor = mode.equals("platform") ? null : newVirtualExecutor();
+        if (virtualExecutor == null && mode.equals("virtual")) {
+            System.out.println("Error: virtual threads are not supported by this Java version, using platform threads");
+        }
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : newPlatformExecutor();
+    }
+
+    /**
+     * Getter for the backend shared by the whole application
+     * @return the shared backend
+     */
+    public static ExecutionBackend getInstance(){
+        return shared;
+    }
+
+    /**
+     * Getter for the executor that runs the tasks
+     * @return the executor, it is never shut down
+     */
+    public ExecutorService getExecutor(){
+        return executor;
+    }
+
+    /**
+     * Method that will check if the tasks run on virtual threads
+     * @return true for virtual threads, false for platform threads
+     */
+    public boolean isVirtual(){
+        return virtual;
+    }
+
+    /**
+     * Method that will describe the backend for the statistics dialog
+     * @return a line with the kind of threads
+     */
+    public String getStatistics(){
+        if (virtual) {
+            return "Trådar: virtuella";
+        }
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+        return "Trådar: vanliga, " + pool.getPoolSize() + " st nu, " + pool.getLargestPoolSize() + " st som mest";
+    }
+
+    /**
+     * Method that will create an executor with one virtual thread per task. The method is looked up at runtime so the
+     * application still runs on Java versions without virtual threads.
+     * @return the executor or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualExecutor(){
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            //not in this version, or only as a preview that is not enabled
+            return null;
+        }
+    }
+
+    /**
+     * Method that will create a pool of daemon threads without an upper limit, a thread is only kept for 30 seconds
+     * without work
+     * @return the executor
+     */
+    private static ExecutorService newPlatformExecutor(){
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "task");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+}
@@ -0,0 +1,341 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that runs every schedule fetch of the application, a limited number at a time, in order of priority. The channel
+ * the user is looking at goes first, then what the user asked for, then the regular background refresh and last the
+ * prefetches. Only one fetch per channel is ever queued or running: asking again for a channel that is already on its
+ * way moves the waiting fetch up if the new request is more urgent, instead of starting a second download. A fetch
+ * that only waits because its channel was on screen is dropped when the user leaves the channel before it has started.
+ * The scheduler counts how long fetches wait in each lane so the queues can be followed in the statistics dialog.
+ * The fetches run on the threads of the execution backend, and the number that may run at the same time can be set
+ * with the system property radioinfo.fetch.concurrency.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class FetchScheduler {
+    private static final FetchScheduler shared = new FetchScheduler(ExecutionBackend.getInstance().getExecutor(),
+            Integer.getInteger("radioinfo.fetch.concurrency", 32));
+    private final Executor executor;
+    private final int maxRunning;
+    //the fetch of every channel that is queued or running, the waiting fetches and how many run, guarded by this
+    private final Map<String, Job> inFlight = new HashMap<>();
+    private final PriorityQueue<Job> queue = new PriorityQueue<>();
+    private int running;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * The lanes a fetch can be queued in, the most urgent first
+     */
+    public enum Priority {
+        VISIBLE, USER, REFRESH, PREFETCH
+    }
+
+    /**
+     * Constructor for the scheduler
+     * @param executor the executor to run the fetches on, it should not queue tasks itself
+     * @param maxRunning the number of fetches that may run at the same time
+     */
+    public FetchScheduler(Executor executor, int maxRunning){
+        this.executor = executor;
+        this.maxRunning = Math.max(1, maxRunning);
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new Lane());
+        }
+    }
+
+    /**
+     * Getter for the scheduler shared by the whole application
+     * @return the shared scheduler
+     */
+    public static FetchScheduler getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will queue the fetch of a channel. The task runs on a thread of the backend, a worker passes what
+     * it found on to the EDT through its observer.
+     * @param channelId the id of the channel, only one fetch per channel is queued or running
+     * @param priority the lane to queue the fetch in
+     * @param task the fetch
+     * @return true if the task was queued, false if the channel already had a fetch on its way. The waiting fetch is
+     *         then moved to the new lane if that is more urgent, and the task is never run.
+     */
+    public synchronized boolean submit(String channelId, Priority priority, Runnable task){
+        Job running = inFlight.get(channelId);
+        if (running != null) {
+            deduplicated.incrementAndGet();
+            if (priority.compareTo(running.priority) < 0 && queue.remove(running)) {
+                //move the waiting fetch up, it keeps its place among the fetches of its new lane
+                lanes.get(running.priority).queued.decrementAndGet();
+                running.priority = priority;
+                enqueue(running);
+            }
+            return false;
+        }
+        Job job = new Job(channelId, priority, task);
+        inFlight.put(channelId, job);
+        enqueue(job);
+        return true;
+    }
+
+    /**
+     * Method that will queue the fetch of a channel in place of the fetch that is already on its way, for a fetch that
+     * does more than the one it would otherwise be merged with. A waiting fetch gets the new task and is moved to the
+     * new lane if that is more urgent, and keeps its callbacks. A fetch that already runs is left to finish and the
+     * new task is queued as soon as it is done.
+     * @param channelId the id of the channel
+     * @param priority the lane to queue the fetch in
+     * @param task the fetch
+     * @return true if the task was queued as a new fetch, false if it took the place of a waiting fetch or will be
+     *         queued after the running one
+     */
+    public synchronized boolean replace(String channelId, Priority priority, Runnable task){
+        Job job = inFlight.get(channelId);
+        if (job == null) {
+            return submit(channelId, priority, task);
+        }
+        deduplicated.incrementAndGet();
+        if (queue.remove(job)) {
+            lanes.get(job.priority).queued.decrementAndGet();
+            job.task = task;
+            if (priority.compareTo(job.priority) < 0) {
+                job.priority = priority;
+            }
+            enqueue(job);
+        } else {
+            job.callbacks.add(() -> submit(channelId, priority, task));
+        }
+        return false;
+    }
+
+    /**
+     * Method that will run a callback when the fetch of a channel is done, or right away if it has no fetch on its
+     * way. The callback runs on the thread that ran the fetch, or on the thread that dropped it.
+     * @param channelId the id of the channel
+     * @param callback the callback
+     */
+    public void whenDone(String channelId, Runnable callback){
+        synchronized (this) {
+            Job job = inFlight.get(channelId);
+            if (job != null) {
+                job.callbacks.add(callback);
+                return;
+            }
+        }
+        callback.run();
+    }
+
+    /**
+     * Method that will be called when the user leaves a channel. A fetch of the channel that has not started yet and
+     * only is queued because the channel was on screen is dropped, a running fetch is left to finish so its result is
+     * kept. The callbacks of a dropped fetch are still run, on the calling thread, as whoever waits for the fetch to
+     * be done would otherwise wait forever.
+     * @param channelId the id of the channel that was left
+     */
+    public void channelLeft(String channelId){
+        List<Runnable> callbacks;
+        synchronized (this) {
+            Job job = inFlight.get(channelId);
+            if (job == null || job.priority != Priority.VISIBLE || !queue.remove(job)) {
+                return;
+            }
+            lanes.get(job.priority).queued.decrementAndGet();
+            inFlight.remove(channelId);
+            cancelled.incrementAndGet();
+            callbacks = job.callbacks;
+        }
+        runCallbacks(callbacks);
+    }
+
+    /**
+     * Method that will check if a channel has a fetch queued or running
+     * @param channelId the id of the channel
+     * @return true if a fetch is on its way
+     */
+    public synchronized boolean isInFlight(String channelId){
+        return inFlight.containsKey(channelId);
+    }
+
+    /**
+     * Method that will return the number of fetches waiting in a lane
+     * @param priority the lane
+     * @return the number of waiting fetches
+     */
+    public int getQueueDepth(Priority priority){
+        return lanes.get(priority).queued.intValue();
+    }
+
+    /**
+     * Method that will return the average time the fetches of a lane waited before they started
+     * @param priority the lane
+     * @return the average wait in milliseconds
+     */
+    public long getAverageWaitMillis(Priority priority){
+        Lane lane = lanes.get(priority);
+        long started = lane.started.get();
+        return started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(lane.totalWait.get() / started);
+    }
+
+    /**
+     * Method that will return the longest time a fetch of a lane waited before it started
+     * @param priority the lane
+     * @return the longest wait in milliseconds
+     */
+    public long getMaxWaitMillis(Priority priority){
+        return TimeUnit.NANOSECONDS.toMillis(lanes.get(priority).maxWait.get());
+    }
+
+    /**
+     * Method that will describe the queues for the statistics dialog
+     * @return a line per lane and one with the counters
+     */
+    public String getStatistics(){
+        StringBuilder statistics = new StringBuilder("Hämtningar:");
+        for (Priority priority : Priority.values()) {
+            Lane lane = lanes.get(priority);
+            statistics.append("\n  ").append(priority.name().toLowerCase()).append(": ")
+                    .append(lane.queued.get()).append(" i kö, ").append(lane.started.get()).append(" startade, väntetid ")
+                    .append(getAverageWaitMillis(priority)).append(" ms i snitt, ")
+                    .append(getMaxWaitMillis(priority)).append(" ms som mest");
+        }
+        statistics.append("\n  ").append(deduplicated.get()).append(" sammanslagna, ")
+                .append(cancelled.get()).append(" avbrutna");
+        return statistics.toString();
+    }
+
+    /**
+     * Method that will return the number of fetches running right now
+     * @return the number of running fetches
+     */
+    public synchronized int getRunning(){
+        return running;
+    }
+
+    /**
+     * Method that will put a job in the queue of its lane and start it if there is room, must hold the lock
+     * @param job the job
+     */
+    private void enqueue(Job job){
+        job.order = sequence.incrementAndGet();
+        lanes.get(job.priority).queued.incrementAndGet();
+        queue.add(job);
+        dispatch();
+    }
+
+    /**
+     * Method that will start the most urgent waiting jobs as long as fewer than the maximum are running, must hold
+     * the lock
+     */
+    private void dispatch(){
+        while (running < maxRunning && !queue.isEmpty()) {
+            Job job = queue.poll();
+            lanes.get(job.priority).queued.decrementAndGet();
+            running++;
+            try {
+                executor.execute(job);
+            } catch (RejectedExecutionException e) {
+                running--;
+                inFlight.remove(job.channelId, job);
+                System.out.println("Error: could not start fetch of channel " + job.channelId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Method that will be called by a job when it is done
+     * @param job the job
+     */
+    private void finished(Job job){
+        List<Runnable> callbacks;
+        synchronized (this) {
+            inFlight.remove(job.channelId, job);
+            callbacks = job.callbacks;
+            running--;
+            dispatch();
+        }
+        runCallbacks(callbacks);
+    }
+
+    /**
+     * Method that will run the callbacks of a job that is done or dropped, must not hold the lock
+     * @param callbacks the callbacks
+     */
+    private static void runCallbacks(List<Runnable> callbacks){
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Class that holds the counters of a lane
+     */
+    private static class Lane {
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong started = new AtomicLong();
+        private final AtomicLong totalWait = new AtomicLong();
+        private final AtomicLong maxWait = new AtomicLong();
+    }
+
+    /**
+     * Class that holds one queued fetch. Jobs are ordered by lane and then by the order they were queued in.
+     */
+    private class Job implements Runnable, Comparable<Job> {
+        private final String channelId;
+        //can be replaced by a fetch that does more while the job waits
+        private volatile Runnable task;
+        private final long submittedAt;
+        //guarded by the scheduler
+        private final List<Runnable> callbacks = new ArrayList<>();
+        private volatile Priority priority;
+        private volatile long order;
+
+        private Job(String channelId, Priority priority, Runnable task){
+            this.channelId = channelId;
+            this.priority = priority;
+            this.task = task;
+            this.submittedAt = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            Lane lane = lanes.get(priority);
+            long wait = System.nanoTime() - submittedAt;
+            lane.started.incrementAndGet();
+            lane.totalWait.addAndGet(wait);
+            lane.maxWait.accumulateAndGet(wait, Math::max);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error: fetch of channel " + channelId + " failed: " + e.getMessage());
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(order, other.order);
+        }
+    }
+}
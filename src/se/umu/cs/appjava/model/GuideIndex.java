@@ -0,0 +1,97 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class that holds the schedule index of every channel that has a schedule, so "what is on every channel at time T"
+ * can be answered with one binary search per channel. A channel puts its new index here whenever its schedule is set.
+ * The guide keeps the "now and next" card on the home page turning over from the loaded schedules, between the
+ * fetches of the list and while the api can not be reached.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class GuideIndex {
+    private static final GuideIndex shared = new GuideIndex();
+    private final ConcurrentHashMap<String, ScheduleIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Getter for the guide shared by the whole application
+     * @return the shared guide
+     */
+    public static GuideIndex getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will set the index of a channel, replacing the old one unless the old one is of a newer version
+     * @param channelId the id of the channel
+     * @param index the index of the channels schedule
+     */
+    public void put(String channelId, ScheduleIndex index){
+        indexes.merge(channelId, index, (old, updated) -> updated.getVersion() >= old.getVersion() ? updated : old);
+    }
+
+    /**
+     * Method that will forget the index of a channel that is no longer in the channel list
+     * @param channelId the id of the channel
+     */
+    public void remove(String channelId){
+        indexes.remove(channelId);
+    }
+
+    /**
+     * Method that will find the program that starts next on a channel after a time
+     * @param channelId the id of the channel
+     * @param epochSecond the time in seconds since the epoch
+     * @return the program or null if nothing starts later or the channel has no schedule
+     */
+    public Program programAfter(String channelId, long epochSecond){
+        ScheduleIndex index = indexes.get(channelId);
+        return index == null ? null : index.programAfter(epochSecond);
+    }
+
+    /**
+     * Method that will bring a "now and next" list up to date at a time. An entry whose current program is still on
+     * is kept as it is, the others are answered from the schedule of the channel if it has one.
+     * @param nowAndNext the list, one entry per channel
+     * @param epochSecond the time in seconds since the epoch
+     * @return the list brought up to date, in the same order
+     */
+    public List<NowAndNext> bringUpToDate(List<NowAndNext> nowAndNext, long epochSecond){
+        Map<String, Program> onAir = programsAt(epochSecond);
+        ArrayList<NowAndNext> upToDate = new ArrayList<>(nowAndNext.size());
+        for (NowAndNext entry : nowAndNext) {
+            Program current = entry.getCurrent();
+            boolean stillOn = current != null && current.getEndEpochSecond() > epochSecond;
+            if (stillOn || !indexes.containsKey(entry.getChannelId())) {
+                upToDate.add(entry);
+            } else {
+                upToDate.add(new NowAndNext(entry.getChannelId(), entry.getChannelName(),
+                        onAir.get(entry.getChannelId()), programAfter(entry.getChannelId(), epochSecond)));
+            }
+        }
+        return upToDate;
+    }
+
+    /**
+     * Method that will find what is on every channel with a schedule at a time
+     * @param epochSecond the time in seconds since the epoch
+     * @return a map from channel id to the program that is on, channels with nothing on are left out
+     */
+    public Map<String, Program> programsAt(long epochSecond){
+        LinkedHashMap<String, Program> onAir = new LinkedHashMap<>();
+        indexes.forEach((channelId, index) -> {
+            Program program = index.programAt(epochSecond);
+            if (program != null) {
+                onAir.put(channelId, program);
+            }
+        });
+        return onAir;
+    }
+}
@@ -0,0 +1,303 @@
+package se.umu.cs.appjava.model;
+
+import javax.net.ssl.SSLSession;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class that holds the one http client the application uses to talk to the api. The client keeps connections alive
+ * between requests and uses HTTP/2 when the server supports it, so many requests share the same connection instead
+ * of paying a new handshake each. Responses are asked for gzip compressed and decompressed here.
+ * The timeouts can be set with the system properties radioinfo.connectTimeout and radioinfo.requestTimeout (seconds).
+ * Every server gets a guard of its own: a limiter that finds how many requests the server can take at the same time,
+ * and a breaker that refuses requests at once while the server keeps failing, so the callers fall back on cached
+ * data. Network errors and every answer with a 5xx status count as failures for both. A request that fails on the
+ * network or gets a busy answer (429, 502, 503 or 504) is sent again after a random wait that doubles with every try.
+ * The most requests at the same time and the number of tries after the first can be set with radioinfo.api.concurrency
+ * and radioinfo.api.retries.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class HttpTransport {
+    private static final HttpTransport shared = new HttpTransport(
+            Duration.ofSeconds(Long.getLong("radioinfo.connectTimeout", 10)),
+            Duration.ofSeconds(Long.getLong("radioinfo.requestTimeout", 20)));
+    private static final int MAX_CONCURRENCY = Math.max(1, Integer.getInteger("radioinfo.api.concurrency", 16));
+    private static final int MAX_RETRIES = Math.max(0, Integer.getInteger("radioinfo.api.retries", 2));
+    private static final long RETRY_BASE_MILLIS = 250;
+    private static final long RETRY_MAX_MILLIS = 4000;
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final ConcurrentHashMap<String, HostGuard> guards = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for the transport
+     * @param connectTimeout the maximum time to wait for a connection
+     * @param requestTimeout the maximum time to wait for a response
+     */
+    public HttpTransport(Duration connectTimeout, Duration requestTimeout){
+        this.requestTimeout = requestTimeout;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    /**
+     * Getter for the transport shared by the whole application
+     * @return the shared transport
+     */
+    public static HttpTransport getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will send a get request and return the body of the response. The caller must close the stream.
+     * @param link the link to get
+     * @return the decompressed body of the response
+     * @throws IOException if the request could not be sent or the response could not be read
+     * @throws RuntimeException if the response code is not 200
+     */
+    public InputStream open(String link) throws IOException {
+        HttpResponse<InputStream> response = send(link, Map.of());
+        if (response.statusCode() != 200) {
+            //release the connection before giving up
+            response.body().close();
+            throw new RuntimeException("HttpResponseCode: " + response.statusCode());
+        }
+        return decode(response);
+    }
+
+    /**
+     * Method that will send a get request with extra headers and return the raw response whatever the status is.
+     * The caller must either close the body or decode it with {@link #decode(HttpResponse)} and close that, the
+     * request counts against the limit of the server until it is closed.
+     * @param link the link to get
+     * @param headers the extra headers to send, such as validators for a conditional request
+     * @return the response with the body not yet read, after the last try if the server was busy
+     * @throws IOException if the request could not be sent, also after the retries, or the breaker of the server is
+     *                     open
+     */
+    public HttpResponse<InputStream> send(String link, Map<String, String> headers) throws IOException {
+        URI uri = URI.create(link);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+        HostGuard guard = guards.computeIfAbsent(String.valueOf(uri.getHost()), HostGuard::new);
+        IOException lastError = null;
+        for (int attempt = 0; ; attempt++) {
+            if (!guard.breaker.allowRequest()) {
+                throw lastError != null ? lastError
+                        : new IOException(guard.host + " (paused after repeated failures)");
+            }
+            guard.limiter.acquire();
+            long started = System.nanoTime();
+            HttpResponse<InputStream> response;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            } catch (InterruptedException e) {
+                guard.limiter.cancel();
+                guard.breaker.recordCancelled();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for " + link);
+            } catch (IOException e) {
+                guard.limiter.release(System.nanoTime() - started, true);
+                guard.breaker.recordFailure();
+                if (e instanceof InterruptedIOException || attempt >= MAX_RETRIES) {
+                    throw e;
+                }
+                lastError = e;
+                backOff(guard, attempt);
+                continue;
+            }
+            long latency = System.nanoTime() - started;
+            if (isBusy(response.statusCode())) {
+                guard.limiter.release(latency, true);
+                guard.breaker.recordFailure();
+                if (attempt >= MAX_RETRIES) {
+                    //let the caller decide what to do with the answer
+                    return response;
+                }
+                response.body().close();
+                backOff(guard, attempt);
+                continue;
+            }
+            if (response.statusCode() >= 500) {
+                //the server answered but is failing, which counts against it even if trying again will not help
+                guard.limiter.release(latency, true);
+                guard.breaker.recordFailure();
+                return response;
+            }
+            guard.breaker.recordSuccess();
+            return new GuardedResponse(response, () -> guard.limiter.release(latency, false));
+        }
+    }
+
+    /**
+     * Method that will check if an answer means that the server is too busy or down right now
+     * @param statusCode the status of the answer
+     * @return true if it is worth trying again later
+     */
+    private static boolean isBusy(int statusCode){
+        return statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * Method that will wait before the next try, a random time up to a bound that doubles with every try
+     * @param guard the guard of the server, counts the retries
+     * @param attempt the number of the try that failed, 0 for the first
+     */
+    private static void backOff(HostGuard guard, int attempt) throws InterruptedIOException {
+        guard.retries.incrementAndGet();
+        long bound = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << attempt);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound / 2, bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting to try again");
+        }
+    }
+
+    /**
+     * Method that will describe the guards of the servers for the statistics dialog
+     * @return one line per server that has been asked
+     */
+    public String getStatistics(){
+        if (guards.isEmpty()) {
+            return "Server: inga anrop ännu";
+        }
+        return guards.values().stream().map(HostGuard::describe).sorted().collect(Collectors.joining("\n"));
+    }
+
+    /**
+     * Method that will wrap the body in a gzip stream if the server compressed it
+     * @param response the response to decode
+     * @return the plain body
+     */
+    public InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            try {
+                return new GZIPInputStream(response.body());
+            } catch (IOException e) {
+                response.body().close();
+                throw e;
+            }
+        }
+        return response.body();
+    }
+
+    /**
+     * Method that will open a connection to the api in the background so the first real request does not have to
+     * wait for the handshake. Errors are ignored since the real request will report them.
+     */
+    public void warmUp(){
+        HttpRequest request = HttpRequest.newBuilder(URI.create("https://api.sr.se/api/v2/channels/?size=1"))
+                .timeout(requestTimeout)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding());
+    }
+
+    /**
+     * Class that holds the limiter, the breaker and the retry counter of one server
+     */
+    private static class HostGuard {
+        private final String host;
+        private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(Math.min(4, MAX_CONCURRENCY), 1, MAX_CONCURRENCY);
+        private final CircuitBreaker breaker = new CircuitBreaker(5, TimeUnit.SECONDS.toMillis(15), TimeUnit.MINUTES.toMillis(2));
+        private final AtomicLong retries = new AtomicLong();
+
+        private HostGuard(String host){
+            this.host = host;
+        }
+
+        private String describe(){
+            return "Server " + host + ": gräns " + String.format("%.1f", limiter.getLimit()) + " (" + limiter.getInFlight()
+                    + " pågår, sänkt " + limiter.getDecreaseCount() + " ggr), brytare " + breaker.getState().getLabel()
+                    + " (" + breaker.getTripCount() + " utlösningar, " + breaker.getRejectedCount() + " avvisade), "
+                    + retries.get() + " omförsök";
+        }
+    }
+
+    /**
+     * Class that wraps a response so the request counts against the limit of the server until its body is closed
+     */
+    private static class GuardedResponse implements HttpResponse<InputStream> {
+        private final HttpResponse<InputStream> response;
+        private final InputStream body;
+
+        private GuardedResponse(HttpResponse<InputStream> response, Runnable onClose){
+            this.response = response;
+            AtomicBoolean closed = new AtomicBoolean();
+            this.body = new FilterInputStream(response.body()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (closed.compareAndSet(false, true)) {
+                            onClose.run();
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+        @Override
+        public HttpRequest request() {
+            return response.request();
+        }
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return response.previousResponse();
+        }
+        @Override
+        public HttpHeaders headers() {
+            return response.headers();
+        }
+        @Override
+        public InputStream body() {
+            return body;
+        }
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return response.sslSession();
+        }
+        @Override
+        public URI uri() {
+            return response.uri();
+        }
+        @Override
+        public HttpClient.Version version() {
+            return response.version();
+        }
+    }
+}
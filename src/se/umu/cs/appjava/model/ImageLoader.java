@@ -0,0 +1,258 @@
+package se.umu.cs.appjava.model;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Class that loads the images of channels and programs in the background. Images are downloaded on a small pool of
+ * threads so parsing and the EDT never wait for them, and several requests for the same image share one load.
+ * Images are only ever kept as thumbnails of the size they are shown in, keyed by url and size. A thumbnail is decoded
+ * with subsampling straight from the file to about the needed resolution, so the full size image is never held, and
+ * every view showing the same logo in the same size shares one instance. Thumbnails are kept in memory in a least
+ * recently used cache capped by bytes, and the downloaded files are kept on disk so they do not have to be downloaded
+ * again after a restart.
+ * The directory can be set with the system property radioinfo.image.dir.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ImageLoader {
+    private static final ImageLoader shared = new ImageLoader(
+            Paths.get(System.getProperty("radioinfo.image.dir",
+                    Paths.get(System.getProperty("user.home"), ".radioinfo", "images").toString())),
+            8L * 1024 * 1024);
+    private final ExecutorService pool = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "image-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentHashMap<String, CompletableFuture<BufferedImage>> inFlight = new ConcurrentHashMap<>();
+    //thumbnails keyed by size and url
+    private final LinkedHashMap<String, BufferedImage> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final Path directory;
+    private final long maxMemoryBytes;
+    private long memoryBytes;
+
+    /**
+     * Constructor for the image loader
+     * @param directory the directory to keep downloaded images in
+     * @param maxMemoryBytes the number of bytes of decoded images to keep in memory
+     */
+    public ImageLoader(Path directory, long maxMemoryBytes){
+        this.directory = directory;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Getter for the image loader shared by the whole application
+     * @return the shared image loader
+     */
+    public static ImageLoader getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will load a thumbnail of an image and give it to the consumer on the EDT when it has arrived. If the
+     * image can not be loaded the consumer is never called, so whatever placeholder is shown stays.
+     * @param url the url of the image, can be null
+     * @param size the width and height of the thumbnail
+     * @param onLoaded the consumer that will get the thumbnail on the EDT
+     */
+    public void loadInto(String url, int size, Consumer<BufferedImage> onLoaded){
+        if (url == null || url.isEmpty()) {
+            return;
+        }
+        load(url, size).thenAccept(image -> {
+            if (image != null) {
+                SwingUtilities.invokeLater(() -> onLoaded.accept(image));
+            }
+        });
+    }
+
+    /**
+     * Method that will return a thumbnail of an image if it has already been loaded, without loading it
+     * @param url the url of the image, can be null
+     * @param size the width and height of the thumbnail
+     * @return the thumbnail or null if it is not in memory
+     */
+    public BufferedImage peek(String url, int size){
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        return getFromMemory(size + "@" + url);
+    }
+
+    /**
+     * Method that will load a thumbnail of an image in the background
+     * @param url the url of the image
+     * @param size the width and height of the thumbnail
+     * @return a future that completes with the thumbnail or null if it could not be loaded
+     */
+    public CompletableFuture<BufferedImage> load(String url, int size){
+        String key = size + "@" + url;
+        BufferedImage cached = getFromMemory(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        //the first caller starts the load, the others wait for the same one
+        return inFlight.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> fetch(url, size, k), pool)
+                .whenComplete((image, error) -> inFlight.remove(k)));
+    }
+
+    /**
+     * Method that will get the image from disk or from the network, decode it to a thumbnail and remember it in memory
+     * @param url the url of the image
+     * @param size the width and height of the thumbnail
+     * @param key the key to remember the thumbnail with
+     * @return the thumbnail or null if it could not be loaded
+     */
+    private BufferedImage fetch(String url, int size, String key){
+        try {
+            BufferedImage thumbnail = decodeThumbnail(readBytes(url), size);
+            if (thumbnail != null) {
+                putInMemory(key, thumbnail);
+            }
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error: could not load image " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method that will decode an image file to a square thumbnail. The reader skips pixels while decoding so only
+     * about the needed resolution is ever decoded, and the rest of the way is a single bilinear scale.
+     * @param bytes the image file
+     * @param size the width and height of the thumbnail
+     * @return the thumbnail or null if the format is not supported
+     */
+    private BufferedImage decodeThumbnail(byte[] bytes, int size) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                //keep at least the target size in both directions so the last step only scales down
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / size);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                BufferedImage decoded = reader.read(0, param);
+                BufferedImage thumbnail = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D graphics = thumbnail.createGraphics();
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(decoded, 0, 0, size, size, null);
+                graphics.dispose();
+                return thumbnail;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Method that will read the bytes of an image, from the disk cache if it has been downloaded before
+     * @param url the url of the image
+     * @return the bytes of the image file
+     */
+    private byte[] readBytes(String url) throws IOException {
+        Path file = directory.resolve(fileName(url));
+        if (Files.exists(file)) {
+            return Files.readAllBytes(file);
+        }
+        byte[] bytes;
+        try (InputStream body = HttpTransport.getInstance().open(url)) {
+            bytes = body.readAllBytes();
+        }
+        try {
+            //write to a temporary file first so a half written file is never read
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "image", ".part");
+            Files.write(temporary, bytes);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Error: could not save image " + url + ": " + e.getMessage());
+        }
+        return bytes;
+    }
+
+    /**
+     * Method that will turn an url into a file name that is safe on every file system
+     * @param url the url of the image
+     * @return the file name
+     */
+    private String fileName(String url){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(url.getBytes(StandardCharsets.UTF_8))) + ".img";
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform must have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized BufferedImage getFromMemory(String key){
+        return memory.get(key);
+    }
+
+    /**
+     * Method that will remember an image in memory and forget the least recently used ones when over the limit
+     */
+    private synchronized void putInMemory(String key, BufferedImage image){
+        BufferedImage old = memory.put(key, image);
+        if (old != null) {
+            memoryBytes -= sizeOf(old);
+        }
+        memoryBytes += sizeOf(image);
+        var iterator = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+            Map.Entry<String, BufferedImage> eldest = iterator.next();
+            if (eldest.getValue() == image) {
+                //never evict the image that was just added
+                continue;
+            }
+            memoryBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    private static long sizeOf(BufferedImage image){
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    /**
+     * Method that will create an empty square icon to show until an image has been loaded
+     * @param size the width and height of the icon
+     * @return the placeholder icon
+     */
+    public static ImageIcon placeholder(int size){
+        return new ImageIcon(new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB));
+    }
+}
@@ -0,0 +1,50 @@
+package se.umu.cs.appjava.model;
+
+/**
+ * Class that holds what is on a channel right now and what comes next, as one row of the bulk "right now" answer
+ * from the api. Either program can be missing, for example when a channel is off the air.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class NowAndNext {
+    private final String channelId;
+    private final String channelName;
+    private final Program current;
+    private final Program next;
+
+    public NowAndNext(String channelId, String channelName, Program current, Program next){
+        this.channelId = channelId;
+        this.channelName = channelName;
+        this.current = current;
+        this.next = next;
+    }
+
+    /**
+     * Getters for the channel
+     * @return the id and name of the channel
+     */
+    public String getChannelId(){
+        return channelId;
+    }
+    public String getChannelName(){
+        return channelName;
+    }
+
+    /**
+     * Getter for the program that is on now
+     * @return the program or null if nothing is on
+     */
+    public Program getCurrent(){
+        return current;
+    }
+
+    /**
+     * Getter for the program that comes next
+     * @return the program or null if nothing is scheduled
+     */
+    public Program getNext(){
+        return next;
+    }
+}
@@ -0,0 +1,152 @@
+package se.umu.cs.appjava.model;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that keeps the "now and next" list of all channels up to date with one bulk request to the api, instead of
+ * downloading two full days of schedule per channel. The list is fetched again on its own short interval, and sooner
+ * if a program on some channel ends before that, so the list turns over close to when the programs change.
+ * A new fetch is only planned when the last one is done, so two fetches never run at the same time.
+ * Channels whose program has ended since the api answered are brought up to date from the loaded schedules through
+ * the guide index, and if the list can not be fetched the last list is brought up to date that way instead.
+ * The interval can be set with the system property radioinfo.nowAndNext.interval (seconds).
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class NowAndNextRefresher {
+    public static final String LINK = "https://api.sr.se/api/v2/scheduledepisodes/rightnow?pagination=false";
+    //never fetch more often than this, even when a program ends in a few seconds
+    private static final long MIN_DELAY_SECONDS = 15;
+    //wait a little after a program has ended so the api has moved on to the next one
+    private static final long END_MARGIN_SECONDS = 5;
+    private final ScheduledExecutorService scheduler;
+    private final ApiParser apiParser;
+    private final String link;
+    private final long intervalSeconds;
+    private Observer observer;
+    //the last list told to the observer, only used on the thread of the scheduler
+    private List<NowAndNext> lastList;
+
+    /**
+     * Constructor for the refresher that fetches from the api with the shared transport
+     */
+    public NowAndNextRefresher(){
+        this(new ApiParser(HttpTransport.getInstance()), LINK, Long.getLong("radioinfo.nowAndNext.interval", 60));
+    }
+
+    /**
+     * Constructor for the refresher
+     * @param apiParser the parser to fetch the list with, only used by the refresher
+     * @param link the link to the right now list
+     * @param intervalSeconds the longest time between two fetches
+     */
+    public NowAndNextRefresher(ApiParser apiParser, String link, long intervalSeconds){
+        this.apiParser = apiParser;
+        this.link = link;
+        this.intervalSeconds = Math.max(MIN_DELAY_SECONDS, intervalSeconds);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "now-and-next");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method that sets the observer that is told about every new list
+     * @param observer the observer to be set
+     */
+    public void setObserver(Observer observer){
+        this.observer = observer;
+    }
+
+    /**
+     * Method that will fetch the list right away and then keep it up to date
+     */
+    public void start(){
+        scheduler.execute(this::refresh);
+    }
+
+    /**
+     * Method that will fetch the list again now, for example when the user asks for an update. The planned fetch
+     * is kept, so the list is at most fetched once more than usual.
+     */
+    public void refreshNow(){
+        scheduler.execute(this::fetch);
+    }
+
+    /**
+     * Method that will stop fetching the list
+     */
+    public void stop(){
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Method that will fetch the list, tell the observer and plan the next fetch
+     */
+    private void refresh(){
+        List<NowAndNext> list = fetch();
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::refresh, nextDelay(list), TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Method that will fetch the list and tell the observer, a failed fetch is only logged as the next one will
+     * try again soon, meanwhile the last list is brought up to date from the loaded schedules
+     * @return the list or null if it could not be fetched
+     */
+    List<NowAndNext> fetch(){
+        GuideIndex guide = GuideIndex.getInstance();
+        long now = Instant.now().getEpochSecond();
+        try {
+            apiParser.parse(link);
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            System.out.println("Error: could not fetch what is on right now, " + e.getMessage());
+            if (lastList != null) {
+                tell(guide.bringUpToDate(lastList, now));
+            }
+            return null;
+        }
+        List<NowAndNext> list = guide.bringUpToDate(apiParser.getNowAndNext(), now);
+        tell(list);
+        return list;
+    }
+
+    /**
+     * Method that will remember a list and tell the observer about it
+     * @param list the list
+     */
+    private void tell(List<NowAndNext> list){
+        lastList = list;
+        if (observer != null) {
+            observer.nowAndNextAvailable(list);
+        }
+    }
+
+    /**
+     * Method that will decide how long to wait until the next fetch
+     * @param list the last fetched list or null if the fetch failed
+     * @return the delay in seconds
+     */
+    long nextDelay(List<NowAndNext> list){
+        long delay = intervalSeconds;
+        if (list != null) {
+            long now = Instant.now().getEpochSecond();
+            for (NowAndNext entry : list) {
+                if (entry.getCurrent() != null) {
+                    delay = Math.min(delay, entry.getCurrent().getEndEpochSecond() - now + END_MARGIN_SECONDS);
+                }
+            }
+        }
+        return Math.max(MIN_DELAY_SECONDS, delay);
+    }
+}
@@ -1,31 +1,49 @@
 package se.umu.cs.appjava.model;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 /**
  * This interface is used to implement the observer pattern.
- * It is used to notify the PageController when the SwingWorker is done parsing the api or when the
- * update timer has triggered. All methods are implemented in the PageController and the methods are
- * running on the EDT to keep it thread safe.
+ * It is used to notify the PageController when a worker is done parsing the api.
+ * All methods are implemented in the PageController and the methods are
+ * running on the EDT to keep it thread safe. The model may call an observer from any thread, the event bus of the
+ * PageController passes the calls on to it on the EDT.
  * @author Jonatan Westling
  * @version 1.0
  * @date 2023-12-28
  */
 public interface Observer {
     /**
-     * This method is used to notify the PageController when the SwingWorker is done parsing the api.
-     * @param channels A HashMap containing all the channels.
+     * This method is used to notify the PageController when a worker is done parsing the api.
+     * @param channels A registry containing all the channels.
+     * @param changes the channels that were added, removed or changed since the registry before.
      */
-     void channelsAvailable(HashMap<String, ArrayList<ChannelInfo>> channels);
+     void channelsAvailable(ChannelRegistry channels, ChannelDiff changes);
     /**
-     * This method is used to notify the PageController when the SwingWorker is done parsing the ap.
-     * @param channelName the name of the channel where its schedule has been parsed.
+     * This method is used to notify the PageController when a worker is done parsing the api.
+     * @param channelId the id of the channel where its schedule has been parsed.
      */
-    void scheduleAvailable(String channelName);
+    void scheduleAvailable(String channelId);
     /**
-     * This method is used to notify the PageController when the update timer has triggered.
+     * This method is used to give the PageController the changes of a schedule that has slid forward with the clock.
+     * @param channelId the id of the channel where its schedule has changed.
+     * @param changes the changes that turn the schedule before into the new one.
+     * @param index the index of the new schedule, its version is one more than the version the changes start from.
+     */
+    void scheduleChanged(String channelId, ScheduleDiff changes, ScheduleIndex index);
+    /**
+     * This method is used to give the PageController programs of a schedule that is still being parsed.
+     * @param channelId the id of the channel the programs belong to.
+     * @param programs the next programs of the schedule in order.
+     */
+    void programsAvailable(String channelId, List<Program> programs);
+    /**
+     * This method is used to give the PageController a new list of what is on every channel now and next.
+     * @param nowAndNext one entry per channel in the order the api sent them.
+     */
+    void nowAndNextAvailable(List<NowAndNext> nowAndNext);
+    /**
+     * This method is used to tell the PageController that something went wrong.
+     * @param errorMessage the message to show the user.
      */
-    void update();
-
     void errorOccurred(String errorMessage);
 
 }
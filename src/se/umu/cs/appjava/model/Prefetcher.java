@@ -0,0 +1,189 @@
+package se.umu.cs.appjava.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that loads schedules before the user asks for them. It remembers how many times each channel has been opened,
+ * saved to disk so it survives a restart, and after startup it loads the schedules of the most visited channels in
+ * the background. It also loads the schedule of a channel the user hovers over in the menu. The work is queued in the
+ * lowest lane of the fetch scheduler, and when that lane is full the prefetch is skipped, so prefetching never
+ * competes with what the user is waiting for. The file can be set with the system property radioinfo.visits.file.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class Prefetcher {
+    private static final Prefetcher shared = new Prefetcher(Paths.get(System.getProperty("radioinfo.visits.file",
+            Paths.get(System.getProperty("user.home"), ".radioinfo", "visits.properties").toString())),
+            FetchScheduler.getInstance(), 16);
+    private final Path visitsFile;
+    private final Properties visits;
+    private final FetchScheduler fetchScheduler;
+    private final int queueSize;
+    //channels prefetched but not opened yet
+    private final Set<String> prefetched = ConcurrentHashMap.newKeySet();
+    private final AtomicLong prefetchCount = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor for the prefetcher
+     * @param visitsFile the file to save the visit counts in
+     * @param fetchScheduler the scheduler to queue the prefetches in
+     * @param queueSize the number of prefetches that may wait, more than that are skipped
+     */
+    public Prefetcher(Path visitsFile, FetchScheduler fetchScheduler, int queueSize){
+        this.visitsFile = visitsFile;
+        this.visits = new Properties();
+        this.fetchScheduler = fetchScheduler;
+        this.queueSize = queueSize;
+        loadVisits();
+    }
+
+    /**
+     * Getter for the prefetcher shared by the whole application
+     * @return the shared prefetcher
+     */
+    public static Prefetcher getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will be called when the user opens a channel. It counts the visit and whether the schedule was
+     * already prefetched.
+     * @param channel the channel that was opened
+     */
+    public void channelOpened(ChannelInfo channel){
+        if (prefetched.remove(channel.getChannelId())) {
+            hits.incrementAndGet();
+        } else if (!channel.isScheduleCached()) {
+            misses.incrementAndGet();
+        }
+        synchronized (visits) {
+            String id = channel.getChannelId();
+            visits.setProperty(id, String.valueOf(getVisits(id) + 1));
+        }
+        //saving touches the disk so it is done off the calling thread
+        CompletableFuture.runAsync(this::saveVisits);
+    }
+
+    /**
+     * Method that will prefetch the schedules of the most visited channels
+     * @param channels all channels
+     * @param count the number of channels to prefetch
+     */
+    public void warmUp(Collection<ChannelInfo> channels, int count){
+        List<ChannelInfo> visited = new ArrayList<>();
+        for (ChannelInfo channel : channels) {
+            if (getVisits(channel.getChannelId()) > 0) {
+                visited.add(channel);
+            }
+        }
+        visited.sort(Comparator.comparingInt((ChannelInfo channel) -> getVisits(channel.getChannelId())).reversed());
+        for (ChannelInfo channel : visited.subList(0, Math.min(count, visited.size()))) {
+            prefetch(channel);
+        }
+    }
+
+    /**
+     * Method that will load the schedule of a channel in the background unless it is already loaded or loading
+     * @param channel the channel to prefetch
+     */
+    public void prefetch(ChannelInfo channel){
+        String id = channel.getChannelId();
+        if (channel.isScheduleCached() || fetchScheduler.isInFlight(id)) {
+            return;
+        }
+        if (fetchScheduler.getQueueDepth(FetchScheduler.Priority.PREFETCH) >= queueSize) {
+            //the budget is used up, skip it rather than wait
+            skipped.incrementAndGet();
+            return;
+        }
+        fetchScheduler.submit(id, FetchScheduler.Priority.PREFETCH, () -> prefetchNow(channel));
+    }
+
+    /**
+     * Method that will load the schedule of a channel on a fetch thread
+     * @param channel the channel to prefetch
+     */
+    private void prefetchNow(ChannelInfo channel){
+        try {
+            if (!channel.isScheduleCached()) {
+                ScheduleBuilder scheduleBuilder = new ScheduleBuilder(channel, new ApiParser(), true);
+                channel.mergeSchedule(scheduleBuilder.getPrograms(), scheduleBuilder.getWindowStart(), scheduleBuilder.getWindowEnd());
+                prefetched.add(channel.getChannelId());
+                prefetchCount.incrementAndGet();
+            }
+        } catch (Exception e) {
+            //the user will get the error if they open the channel
+            System.out.println("Error: could not prefetch " + channel.getChannelName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Method that will describe the counters for the statistics dialog
+     * @return a line with the counters
+     */
+    public String getStatistics(){
+        long opened = hits.get() + misses.get();
+        long hitRate = opened == 0 ? 0 : hits.get() * 100 / opened;
+        return "Förhandsladdning: " + prefetchCount.get() + " scheman laddade, " + skipped.get() + " överhoppade, "
+                + hits.get() + " träffar, " + misses.get() + " missar (" + hitRate + "% träffar)";
+    }
+
+    private int getVisits(String channelId){
+        synchronized (visits) {
+            try {
+                return Integer.parseInt(visits.getProperty(channelId, "0"));
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Method that will read the saved visit counts, a missing or broken file counts as no visits
+     */
+    private void loadVisits(){
+        if (!Files.exists(visitsFile)) {
+            return;
+        }
+        try (InputStream in = Files.newInputStream(visitsFile)) {
+            visits.load(in);
+        } catch (IOException e) {
+            System.out.println("Error: could not read visits: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Method that will save the visit counts
+     */
+    private void saveVisits(){
+        try {
+            Files.createDirectories(visitsFile.getParent());
+            synchronized (visits) {
+                try (OutputStream out = Files.newOutputStream(visitsFile)) {
+                    visits.store(out, "RadioInfo channel visits");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error: could not save visits: " + e.getMessage());
+        }
+    }
+}
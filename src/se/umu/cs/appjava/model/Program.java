@@ -1,12 +1,14 @@
 package se.umu.cs.appjava.model;
+import java.time.Instant;
 import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class that will hold the information about a program, such as name, description, start and end time.
- * It will also convert the utc time to the local time of the user and format it to a more readable format.
+ * The times are kept as epoch seconds and are only formatted to the users time zone when they are first shown.
+ * The formatted times are remembered until the display time zone changes, and one formatter is shared per time zone.
  * The class have getters for all the information so it can get accessed when building the view.
  *
  * @author Jonatan Westling
@@ -14,59 +16,156 @@ import java.util.Locale;
  * @date 2024-01-05
  */
 public class Program {
-    private String episodeId;
-    private String programName;
-    private String description;
-    private String startTimeUtc;
-    private String endTimeUtc;
-    private String image;
-    private String formattedStartTime;
-    private String formattedEndTime;
-    private ZonedDateTime zonedLocalStartTime;
-    private ZonedDateTime zonedLocalEndTime;
+    private static final String PATTERN = "HH:mm - dd/MM";
+    private static final ConcurrentHashMap<ZoneId, DateTimeFormatter> formatters = new ConcurrentHashMap<>();
+    //the zone to show times in, null means the current default zone of the system
+    private static volatile ZoneId displayZone;
+    private final String episodeId;
+    private final String programName;
+    private final String description;
+    private final String image;
+    private final long startEpochSecond;
+    private final long endEpochSecond;
+    //the formatted times and the zone they were formatted in, built the first time they are asked for
+    private volatile Formatted formatted;
 
     public Program(String programName, String episodeId, String description, String startTimeUtc, String endTimeUtc, String image){
+        this(programName, episodeId, description, parseUtc(startTimeUtc), parseUtc(endTimeUtc), image);
+    }
 
+    public Program(String programName, String episodeId, String description, long startEpochSecond, long endEpochSecond, String image){
         this.programName = programName;
         this.episodeId = episodeId;
         this.description = description;
-        this.startTimeUtc = startTimeUtc;
-        this.endTimeUtc = endTimeUtc;
+        this.startEpochSecond = startEpochSecond;
+        this.endEpochSecond = endEpochSecond;
         this.image = image;
-        convertTimeToLocalTime();
+    }
+
+    /**
+     * Method that will parse a time from the api to epoch seconds. The api sends times as yyyy-MM-ddTHH:mm:ssZ,
+     * which is read digit by digit without building any objects. Anything else is parsed the slow way.
+     * @param utc the time in utc
+     * @return the time in seconds since the epoch
+     */
+    static long parseUtc(String utc){
+        if (utc.length() == 20 && utc.charAt(4) == '-' && utc.charAt(7) == '-' && utc.charAt(10) == 'T'
+                && utc.charAt(13) == ':' && utc.charAt(16) == ':' && utc.charAt(19) == 'Z') {
+            int year = digits(utc, 0, 4);
+            int month = digits(utc, 5, 2);
+            int day = digits(utc, 8, 2);
+            int hour = digits(utc, 11, 2);
+            int minute = digits(utc, 14, 2);
+            int second = digits(utc, 17, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour >= 0 && hour <= 23
+                    && minute >= 0 && minute <= 59 && second >= 0 && second <= 59) {
+                return epochDay(year, month, day) * 86400 + hour * 3600L + minute * 60L + second;
+            }
+        }
+        return Instant.parse(utc).getEpochSecond();
+    }
+
+    /**
+     * Method that will read a number of digits, returns -1 if any of them is not a digit
+     */
+    private static int digits(String text, int start, int count){
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
 
+    /**
+     * Method that will count the days from 1970-01-01 to a date in the proleptic gregorian calendar, the same
+     * calendar as LocalDate uses
+     */
+    private static long epochDay(int year, int month, int day){
+        //move january and february to the end of the previous year so the leap day is last
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
     }
 
     /**
-     * Will convert the utc time to the local time of the users current time zone.
+     * Method that will set the time zone the times of all programs are shown in. The times are formatted again
+     * the next time they are asked for, nothing has to be parsed again.
+     * @param zone the zone to show times in, or null to follow the system default
      */
-    private void convertTimeToLocalTime(){
-        ZonedDateTime utcInstantStart = ZonedDateTime.parse(startTimeUtc);
-        ZonedDateTime utcInstantEnd = ZonedDateTime.parse(endTimeUtc);
-        //convert to zoned date time in the local time
-        zonedLocalStartTime = utcInstantStart.withZoneSameInstant(ZoneId.systemDefault());
-        zonedLocalEndTime = utcInstantEnd.withZoneSameInstant(ZoneId.systemDefault());
+    public static void setDisplayZone(ZoneId zone){
+        displayZone = zone;
+    }
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm - dd/MM", Locale.ENGLISH);
-        this.formattedStartTime= zonedLocalStartTime.format(formatter);
-        this.formattedEndTime = zonedLocalEndTime.format(formatter);
+    /**
+     * Getter for the time zone times are shown in
+     * @return the display time zone
+     */
+    public static ZoneId getDisplayZone(){
+        ZoneId zone = displayZone;
+        return zone != null ? zone : ZoneId.systemDefault();
     }
 
     /**
-     * Getter for the converted time
-     * @return the converted start time
+     * Method that will return the shared formatter for a time zone
+     * @param zone the time zone
+     * @return the formatter
      */
-    public ZonedDateTime getZonedLocalDateEndTIme(){
-        return zonedLocalEndTime;
+    public static DateTimeFormatter formatterFor(ZoneId zone){
+        return formatters.computeIfAbsent(zone, z -> DateTimeFormatter.ofPattern(PATTERN, Locale.ENGLISH).withZone(z));
     }
 
     /**
-     * Getter for the converted time
-     * @return the converted start end
+     * Method that will return the times formatted in the display zone, formatting them if the zone has changed
      */
-    public ZonedDateTime getZonedLocalDateStartTime(){
-        return zonedLocalStartTime;
+    private Formatted formatted(){
+        ZoneId zone = getDisplayZone();
+        Formatted current = formatted;
+        if (current == null || !current.zone.equals(zone)) {
+            DateTimeFormatter formatter = formatterFor(zone);
+            current = new Formatted(zone, formatter.format(Instant.ofEpochSecond(startEpochSecond)),
+                    formatter.format(Instant.ofEpochSecond(endEpochSecond)));
+            formatted = current;
+        }
+        return current;
     }
+
+    /**
+     * Getters for the times
+     * @return the time in seconds since the epoch
+     */
+    public long getStartEpochSecond(){
+        return startEpochSecond;
+    }
+    public long getEndEpochSecond(){
+        return endEpochSecond;
+    }
+
+    /**
+     * Getter for the episode id
+     * @return the id of the episode, can be null for programs without episodes
+     */
+    public String getEpisodeId(){
+        return episodeId;
+    }
+
+    /**
+     * Getters for the times in the same format as the api sends them
+     * @return the time in utc
+     */
+    public String getStartTimeUtc(){
+        return Instant.ofEpochSecond(startEpochSecond).toString();
+    }
+    public String getEndTimeUtc(){
+        return Instant.ofEpochSecond(endEpochSecond).toString();
+    }
+
     /**
      * Getter for the program name
      * @return the program name
@@ -80,7 +179,7 @@ public class Program {
      * @return the formatted start time used for the users view
      */
     public String getStartTime(){
-        return formattedStartTime;
+        return formatted().start;
     }
 
     /**
@@ -88,7 +187,7 @@ public class Program {
      * @return the formatted end time used for the users view
      */
     public String getEndTime(){
-        return formattedEndTime;
+        return formatted().end;
     }
 
     /**
@@ -106,4 +205,20 @@ public class Program {
     public String getDescription(){
         return description;
     }
+
+    /**
+     * Class that holds the formatted times together with the zone they were formatted in, so a reader on another
+     * thread always sees a matching pair
+     */
+    private static class Formatted {
+        private final ZoneId zone;
+        private final String start;
+        private final String end;
+
+        private Formatted(ZoneId zone, String start, String end){
+            this.zone = zone;
+            this.start = start;
+            this.end = end;
+        }
+    }
 }
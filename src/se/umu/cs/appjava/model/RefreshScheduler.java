@@ -0,0 +1,247 @@
+package se.umu.cs.appjava.model;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that keeps the cached schedules up to date. One timer thread lives as long as the application and plans the
+ * next refresh of every channel the user has opened from the schedule the channel already has: a schedule that is
+ * close to running out is refreshed sooner, and a schedule that did not change the last times it was refreshed is
+ * refreshed less often. Every planned time is moved a little at random so the channels do not all refresh at once.
+ * The next refresh of a channel is only planned when the last one is done, so a slow refresh never overlaps the next.
+ * The refreshes are queued in the refresh lane of the fetch scheduler. A planned refresh only slides the schedule
+ * forward with the clock and fetches the day at the end of it, while a refresh the user asks for fetches the whole
+ * schedule again. The normal time between two refreshes can be set with the system property
+ * radioinfo.refresh.interval (minutes).
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class RefreshScheduler {
+    //never refresh a channel more often than this
+    private static final long MIN_DELAY_SECONDS = 5 * 60;
+    //a schedule that has not changed waits at most this many times the interval
+    private static final int MAX_BACKOFF_STEPS = 2;
+    //how much a planned time may be moved, as a share of the delay
+    private static final double JITTER = 0.1;
+    private final ScheduledExecutorService timer;
+    private final FetchScheduler fetchScheduler;
+    private final long intervalSeconds;
+    //the refresh state of every tracked channel, guarded by this
+    private final Map<String, ChannelRefresh> channels = new HashMap<>();
+    private Observer observer;
+    private boolean shutdown;
+
+    /**
+     * Constructor for the scheduler that uses the shared fetch scheduler
+     */
+    public RefreshScheduler(){
+        this(FetchScheduler.getInstance(), TimeUnit.MINUTES.toSeconds(Long.getLong("radioinfo.refresh.interval", 60)));
+    }
+
+    /**
+     * Constructor for the scheduler
+     * @param fetchScheduler the scheduler to queue the refreshes in
+     * @param intervalSeconds the normal time between two refreshes of a channel
+     */
+    public RefreshScheduler(FetchScheduler fetchScheduler, long intervalSeconds){
+        this.fetchScheduler = fetchScheduler;
+        this.intervalSeconds = Math.max(MIN_DELAY_SECONDS, intervalSeconds);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Method that sets the observer the refreshing workers report to
+     * @param observer the observer to be set
+     */
+    public void setObserver(Observer observer){
+        this.observer = observer;
+    }
+
+    /**
+     * Method that will start keeping the schedule of a channel up to date, nothing happens if it already is
+     * @param channel the channel
+     */
+    public synchronized void track(ChannelInfo channel){
+        if (shutdown || channels.containsKey(channel.getChannelId())) {
+            return;
+        }
+        ChannelRefresh state = new ChannelRefresh(channel);
+        channels.put(channel.getChannelId(), state);
+        if (fetchScheduler.isInFlight(channel.getChannelId())) {
+            //the schedule is still being loaded, plan from it when it is there
+            state.refreshing = true;
+            fetchScheduler.whenDone(channel.getChannelId(), () -> refreshed(state));
+        } else {
+            plan(state);
+        }
+    }
+
+    /**
+     * Method that will stop keeping the schedule of a channel up to date, for example when the channel is gone from
+     * the channel list. A refresh that already runs is left to finish but no new one is planned.
+     * @param channelId the id of the channel
+     */
+    public synchronized void untrack(String channelId){
+        ChannelRefresh state = channels.remove(channelId);
+        if (state != null && state.planned != null) {
+            state.planned.cancel(false);
+        }
+    }
+
+    /**
+     * Method that will refresh the schedule of a channel now, for example when the user asks for an update. The
+     * planned refresh of the channel is replaced, and the next one is planned when this one is done.
+     * @param channel the channel
+     * @param priority the lane to queue the refresh in
+     */
+    public synchronized void refreshNow(ChannelInfo channel, FetchScheduler.Priority priority){
+        if (shutdown) {
+            return;
+        }
+        ChannelRefresh state = channels.computeIfAbsent(channel.getChannelId(), id -> new ChannelRefresh(channel));
+        refresh(state, priority, false);
+    }
+
+    /**
+     * Method that will stop all planned refreshes and the timer thread, refreshes that already run are left to finish
+     */
+    public synchronized void shutdown(){
+        shutdown = true;
+        channels.values().forEach(state -> {
+            if (state.planned != null) {
+                state.planned.cancel(false);
+            }
+        });
+        channels.clear();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Method that will plan the next refresh of a channel, must hold the lock
+     * @param state the channel
+     */
+    private void plan(ChannelRefresh state){
+        if (state.planned != null) {
+            state.planned.cancel(false);
+        }
+        state.planned = timer.schedule(() -> {
+            synchronized (this) {
+                if (!shutdown) {
+                    refresh(state, FetchScheduler.Priority.REFRESH, true);
+                }
+            }
+        }, nextDelay(state), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Method that will queue a refresh of a channel, must hold the lock. If a refresh of the channel is already on
+     * its way it is only moved to the lane if that is more urgent, and no second refresh is started.
+     * @param state the channel
+     * @param priority the lane to queue the refresh in
+     * @param slide true to only slide the schedule forward, false to fetch the whole schedule
+     */
+    private void refresh(ChannelRefresh state, FetchScheduler.Priority priority, boolean slide){
+        if (state.planned != null) {
+            state.planned.cancel(false);
+            state.planned = null;
+        }
+        Worker worker = slide ? Worker.slider(state.channel) : new Worker(state.channel, true);
+        worker.setObserver(observer);
+        if (slide) {
+            fetchScheduler.submit(state.channel.getChannelId(), priority, worker);
+        } else {
+            //a slide that is waiting would otherwise swallow the full refresh the user asked for
+            fetchScheduler.replace(state.channel.getChannelId(), priority, worker);
+        }
+        if (!state.refreshing) {
+            state.refreshing = true;
+            fetchScheduler.whenDone(state.channel.getChannelId(), () -> refreshed(state));
+        }
+    }
+
+    /**
+     * Method that will be called when a refresh of a channel is done, it compares the schedule with the one before
+     * and plans the next refresh
+     * @param state the channel
+     */
+    private synchronized void refreshed(ChannelRefresh state){
+        state.refreshing = false;
+        long fingerprint = fingerprint(state.channel.getScheduleIndex().getPrograms());
+        if (fingerprint == state.fingerprint) {
+            state.unchanged = Math.min(MAX_BACKOFF_STEPS, state.unchanged + 1);
+        } else {
+            state.unchanged = 0;
+            state.fingerprint = fingerprint;
+        }
+        if (!shutdown && channels.get(state.channel.getChannelId()) == state) {
+            plan(state);
+        }
+    }
+
+    /**
+     * Method that will work out how long to wait until the next refresh of a channel. The wait doubles for every
+     * refresh in a row that did not change the schedule, but it is never more than a third of the time the loaded
+     * schedule has left, so a schedule that is running out is refreshed well before it does.
+     * @param state the channel
+     * @return the delay in seconds
+     */
+    private long nextDelay(ChannelRefresh state){
+        long delay = intervalSeconds << state.unchanged;
+        List<Program> programs = state.channel.getScheduleIndex().getPrograms();
+        if (!programs.isEmpty()) {
+            long loadedUntil = programs.get(programs.size() - 1).getEndEpochSecond();
+            long left = Math.max(0, loadedUntil - Instant.now().getEpochSecond());
+            delay = Math.min(delay, left / 3);
+        }
+        delay = Math.max(MIN_DELAY_SECONDS, delay);
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        return Math.round(delay * jitter);
+    }
+
+    /**
+     * Method that will compute a fingerprint of a schedule so two schedules can be compared cheaply
+     * @param programs the programs in start order
+     * @return the fingerprint
+     */
+    private static long fingerprint(List<Program> programs){
+        long hash = programs.size();
+        for (Program program : programs) {
+            hash = hash * 31 + Objects.hashCode(program.getEpisodeId());
+            hash = hash * 31 + Objects.hashCode(program.getProgramName());
+            hash = hash * 31 + program.getStartEpochSecond();
+            hash = hash * 31 + program.getEndEpochSecond();
+        }
+        return hash;
+    }
+
+    /**
+     * Class that holds the refresh state of one channel, guarded by the scheduler
+     */
+    private static class ChannelRefresh {
+        private final ChannelInfo channel;
+        private ScheduledFuture<?> planned;
+        private boolean refreshing;
+        //the number of refreshes in a row that did not change the schedule
+        private int unchanged;
+        private long fingerprint;
+
+        private ChannelRefresh(ChannelInfo channel){
+            this.channel = channel;
+            this.fingerprint = fingerprint(channel.getScheduleIndex().getPrograms());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that remembers the last parsed result of every link together with the validators (ETag and Last-Modified)
+ * the server sent for it. The parser uses the validators to make conditional requests, and when the server answers
+ * 304 Not Modified, or fails while there is an old answer to fall back on, the remembered result is used instead of
+ * downloading and parsing the document again. The cache counts hits, misses and 304 answers so the saving can be seen.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ResponseCache {
+    private static final ResponseCache shared = new ResponseCache(256);
+    private final LinkedHashMap<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    /**
+     * Constructor for the cache
+     * @param maxEntries the number of links to remember before the least recently used is forgotten
+     */
+    public ResponseCache(int maxEntries){
+        entries = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Getter for the cache shared by all parsers
+     * @return the shared cache
+     */
+    public static ResponseCache getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will return the remembered entry for a link
+     * @param link the link
+     * @return the entry or null if the link has not been parsed before
+     */
+    public synchronized Entry get(String link){
+        return entries.get(link);
+    }
+
+    /**
+     * Method that will remember the parsed result of a link
+     * @param link the link
+     * @param entry the validators and result
+     */
+    public synchronized void put(String link, Entry entry){
+        entries.put(link, entry);
+    }
+
+    /**
+     * Methods that will count how a request was answered
+     */
+    void recordMiss(){
+        misses.incrementAndGet();
+    }
+    void recordNotModified(){
+        hits.incrementAndGet();
+        notModified.incrementAndGet();
+    }
+    void recordStale(){
+        hits.incrementAndGet();
+        staleServed.incrementAndGet();
+    }
+
+    /**
+     * Getters for the counters
+     * @return the number of requests answered in each way
+     */
+    public long getHitCount(){
+        return hits.get();
+    }
+    public long getMissCount(){
+        return misses.get();
+    }
+    public long getNotModifiedCount(){
+        return notModified.get();
+    }
+    public long getStaleCount(){
+        return staleServed.get();
+    }
+
+    /**
+     * Method that will describe the counters for the statistics dialog
+     * @return a line with the counters
+     */
+    public String getStatistics(){
+        return "Svarscache: " + getHitCount() + " träffar (" + getNotModifiedCount() + " st 304, "
+                + getStaleCount() + " inaktuella vid fel), " + getMissCount() + " missar";
+    }
+
+    /**
+     * Class that holds the validators and the parsed result of one link. The lists are copied so later changes to
+     * the parsers lists do not leak into the cache.
+     */
+    public static class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final List<Program> programs;
+        private final List<ChannelInfo> channels;
+        private final List<NowAndNext> nowAndNext;
+
+        public Entry(String etag, String lastModified, List<Program> programs, List<ChannelInfo> channels){
+            this(etag, lastModified, programs, channels, null);
+        }
+        private Entry(String etag, String lastModified, List<Program> programs, List<ChannelInfo> channels,
+                      List<NowAndNext> nowAndNext){
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.programs = programs == null ? null : List.copyOf(programs);
+            this.channels = channels == null ? null : List.copyOf(channels);
+            this.nowAndNext = nowAndNext == null ? null : List.copyOf(nowAndNext);
+        }
+
+        /**
+         * Method that will build an entry for the right now list of all channels
+         * @param etag the etag of the response or null
+         * @param lastModified the last modified date of the response or null
+         * @param nowAndNext what is on every channel
+         * @return the entry
+         */
+        public static Entry ofNowAndNext(String etag, String lastModified, List<NowAndNext> nowAndNext){
+            return new Entry(etag, lastModified, null, null, nowAndNext);
+        }
+        public String getEtag(){
+            return etag;
+        }
+        public String getLastModified(){
+            return lastModified;
+        }
+        public ArrayList<Program> getPrograms(){
+            return programs == null ? new ArrayList<>() : new ArrayList<>(programs);
+        }
+        public ArrayList<ChannelInfo> getChannels(){
+            return channels == null ? new ArrayList<>() : new ArrayList<>(channels);
+        }
+        public ArrayList<NowAndNext> getNowAndNext(){
+            return nowAndNext == null ? new ArrayList<>() : new ArrayList<>(nowAndNext);
+        }
+    }
+}
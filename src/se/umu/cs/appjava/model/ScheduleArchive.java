@@ -0,0 +1,351 @@
+package se.umu.cs.appjava.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class that stores every fetched day page on disk so schedules survive a restart and old days can still be looked
+ * up after the api has stopped serving them. Each channel has two append only files:
+ * <ul>
+ *     <li>channelId.idx - fixed width records of 40 bytes: stored at (ms), start and end (epoch seconds),
+ *     offset in the data file, the day (epoch day) and the length of the data. A day page without programs is stored
+ *     as one record with the length -1 and no data, so it replaces the batches stored before it.</li>
+ *     <li>channelId.dat - the text of the programs, one record per program</li>
+ * </ul>
+ * A day that is fetched again is appended as a new batch, and reading a day uses the batch stored last. When most of
+ * the records of a channel belong to batches that have been replaced, the files are compacted so only the last batch
+ * of every day is left, which keeps both the files and the scan of the index small. The index is read through a
+ * memory mapped buffer and only the part of the data file that holds the batch is mapped, so opening a channel needs
+ * no network and no xml parsing. Every channel has a lock of its own, so channels are read and stored in parallel.
+ * The directory can be set with the system property radioinfo.archive.dir.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ScheduleArchive {
+    private static final int INDEX_RECORD_SIZE = 40;
+    //the length of the one record of a batch without programs
+    private static final int EMPTY_BATCH = -1;
+    //the files are compacted when they hold this many times as many records as the last batches of the days
+    private static final int COMPACT_FACTOR = 2;
+    //and at least this many records, so a small archive is not compacted on every store
+    private static final int COMPACT_MIN_RECORDS = 512;
+    private static final ScheduleArchive shared = new ScheduleArchive(Paths.get(System.getProperty("radioinfo.archive.dir",
+            Paths.get(System.getProperty("user.home"), ".radioinfo", "archive").toString())));
+    private final Path directory;
+    private final AtomicLong lastStoredAt = new AtomicLong();
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for the archive
+     * @param directory the directory to keep the files in
+     */
+    public ScheduleArchive(Path directory){
+        this.directory = directory;
+    }
+
+    /**
+     * Getter for the archive shared by the whole application
+     * @return the shared archive
+     */
+    public static ScheduleArchive getInstance(){
+        return shared;
+    }
+
+    /**
+     * Method that will append a fetched day page for a channel to the archive
+     * @param channelId the id of the channel
+     * @param day the day the page was fetched for
+     * @param programs the programs of the page in the order they were parsed
+     * @throws IOException if the files could not be written
+     */
+    public void store(String channelId, LocalDate day, List<Program> programs) throws IOException {
+        synchronized (lockFor(channelId)) {
+            Files.createDirectories(directory);
+            append(channelId, day, programs);
+            compactIfNeeded(channelId);
+        }
+    }
+
+    /**
+     * Method that will append a batch to the files of a channel, must hold the lock of the channel
+     * @param channelId the id of the channel
+     * @param day the day the page was fetched for
+     * @param programs the programs of the page in the order they were parsed
+     */
+    private void append(String channelId, LocalDate day, List<Program> programs) throws IOException {
+        //two batches stored in the same millisecond would otherwise read as one
+        long storedAt = lastStoredAt.updateAndGet(last -> Math.max(System.currentTimeMillis(), last + 1));
+        try (FileChannel data = FileChannel.open(dataFile(channelId), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel index = FileChannel.open(indexFile(channelId), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = data.size();
+            ByteBuffer indexRecords = ByteBuffer.allocate(Math.max(1, programs.size()) * INDEX_RECORD_SIZE);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Program program : programs) {
+                int before = out.size();
+                writeText(out, program.getProgramName());
+                writeText(out, program.getEpisodeId());
+                writeText(out, program.getDescription());
+                writeText(out, program.getStartTimeUtc());
+                writeText(out, program.getEndTimeUtc());
+                writeText(out, program.getImage());
+                indexRecords.putLong(storedAt);
+                indexRecords.putLong(program.getStartEpochSecond());
+                indexRecords.putLong(program.getEndEpochSecond());
+                indexRecords.putLong(offset + before);
+                indexRecords.putInt((int) day.toEpochDay());
+                indexRecords.putInt(out.size() - before);
+            }
+            if (programs.isEmpty()) {
+                //an empty page still has to replace the batches of the day stored before it
+                indexRecords.putLong(storedAt);
+                indexRecords.putLong(0);
+                indexRecords.putLong(0);
+                indexRecords.putLong(offset);
+                indexRecords.putInt((int) day.toEpochDay());
+                indexRecords.putInt(EMPTY_BATCH);
+            }
+            //the data is written before the index so a crash never leaves an index record without its data
+            data.write(ByteBuffer.wrap(bytes.toByteArray()), offset);
+            indexRecords.flip();
+            index.write(indexRecords, index.size());
+        }
+    }
+
+    /**
+     * Method that will read the last stored page of a day for a channel
+     * @param channelId the id of the channel
+     * @param day the day to read
+     * @return the page or null if the day has never been stored
+     * @throws IOException if the files could not be read
+     */
+    public Page load(String channelId, LocalDate day) throws IOException {
+        synchronized (lockFor(channelId)) {
+            Path indexPath = indexFile(channelId);
+            Path dataPath = dataFile(channelId);
+            if (!Files.exists(indexPath) || !Files.exists(dataPath)) {
+                return null;
+            }
+            try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ);
+                 FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+                //ignore a half written record at the end
+                int records = (int) (index.size() / INDEX_RECORD_SIZE);
+                MappedByteBuffer indexBuffer = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) records * INDEX_RECORD_SIZE);
+                int epochDay = (int) day.toEpochDay();
+                //find the last batch stored for the day and where it lies in the data file
+                long latest = -1;
+                long from = 0;
+                long to = 0;
+                for (int i = 0; i < records; i++) {
+                    int position = i * INDEX_RECORD_SIZE;
+                    if (indexBuffer.getInt(position + 32) != epochDay) {
+                        continue;
+                    }
+                    long storedAt = indexBuffer.getLong(position);
+                    long offset = indexBuffer.getLong(position + 24);
+                    long end = offset + Math.max(0, indexBuffer.getInt(position + 36));
+                    if (storedAt > latest) {
+                        latest = storedAt;
+                        from = offset;
+                        to = end;
+                    } else if (storedAt == latest) {
+                        from = Math.min(from, offset);
+                        to = Math.max(to, end);
+                    }
+                }
+                if (latest == -1 || to > data.size()) {
+                    return null;
+                }
+                //a batch is written in one piece, so only that part of the data file is mapped
+                MappedByteBuffer dataBuffer = data.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                ArrayList<Program> programs = new ArrayList<>();
+                for (int i = 0; i < records; i++) {
+                    int position = i * INDEX_RECORD_SIZE;
+                    if (indexBuffer.getInt(position + 32) == epochDay && indexBuffer.getLong(position) == latest
+                            && indexBuffer.getInt(position + 36) != EMPTY_BATCH) {
+                        dataBuffer.position((int) (indexBuffer.getLong(position + 24) - from));
+                        String title = readText(dataBuffer);
+                        String episodeId = readText(dataBuffer);
+                        String description = readText(dataBuffer);
+                        //the times are read from the index, so the utc texts are skipped without being decoded
+                        skipText(dataBuffer);
+                        skipText(dataBuffer);
+                        String image = readText(dataBuffer);
+                        programs.add(new Program(title, episodeId, description, indexBuffer.getLong(position + 8),
+                                indexBuffer.getLong(position + 16), image));
+                    }
+                }
+                return new Page(latest, programs);
+            }
+        }
+    }
+
+    /**
+     * Method that will rewrite the files of a channel with only the last batch of every day, if most of the records
+     * belong to batches that have been replaced. Must hold the lock of the channel. The new files are written next to
+     * the old ones and moved in place, the index is deleted first so a crash in between leaves no index that points
+     * into the wrong data file, only a channel that has to be fetched again.
+     * @param channelId the id of the channel
+     */
+    private void compactIfNeeded(String channelId) throws IOException {
+        Path indexPath = indexFile(channelId);
+        Path dataPath = dataFile(channelId);
+        try (FileChannel index = FileChannel.open(indexPath, StandardOpenOption.READ);
+             FileChannel data = FileChannel.open(dataPath, StandardOpenOption.READ)) {
+            int records = (int) (index.size() / INDEX_RECORD_SIZE);
+            if (records < COMPACT_MIN_RECORDS) {
+                return;
+            }
+            MappedByteBuffer indexBuffer = index.map(FileChannel.MapMode.READ_ONLY, 0, (long) records * INDEX_RECORD_SIZE);
+            //the last batch of every day
+            HashMap<Integer, Long> latest = new HashMap<>();
+            for (int i = 0; i < records; i++) {
+                int position = i * INDEX_RECORD_SIZE;
+                latest.merge(indexBuffer.getInt(position + 32), indexBuffer.getLong(position), Math::max);
+            }
+            int live = 0;
+            for (int i = 0; i < records; i++) {
+                int position = i * INDEX_RECORD_SIZE;
+                if (latest.get(indexBuffer.getInt(position + 32)) == indexBuffer.getLong(position)) {
+                    live++;
+                }
+            }
+            if (records < (long) live * COMPACT_FACTOR) {
+                return;
+            }
+            try (FileChannel newIndex = FileChannel.open(indexTemp(channelId), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                 FileChannel newData = FileChannel.open(dataTemp(channelId), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+                for (int i = 0; i < records; i++) {
+                    int position = i * INDEX_RECORD_SIZE;
+                    if (latest.get(indexBuffer.getInt(position + 32)) != indexBuffer.getLong(position)) {
+                        continue;
+                    }
+                    int length = indexBuffer.getInt(position + 36);
+                    ByteBuffer bytes = ByteBuffer.allocate(Math.max(0, length));
+                    long offset = indexBuffer.getLong(position + 24);
+                    while (bytes.hasRemaining()) {
+                        if (data.read(bytes, offset + bytes.position()) < 0) {
+                            throw new IOException("the archive of " + channelId + " ends in the middle of a record");
+                        }
+                    }
+                    bytes.flip();
+                    long newOffset = newData.size();
+                    newData.write(bytes, newOffset);
+                    record.clear();
+                    record.putLong(indexBuffer.getLong(position));
+                    record.putLong(indexBuffer.getLong(position + 8));
+                    record.putLong(indexBuffer.getLong(position + 16));
+                    record.putLong(newOffset);
+                    record.putInt(indexBuffer.getInt(position + 32));
+                    record.putInt(length);
+                    record.flip();
+                    newIndex.write(record, newIndex.size());
+                }
+            }
+        }
+        Files.delete(indexPath);
+        Files.move(dataTemp(channelId), dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemp(channelId), indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method that will give the lock of a channel
+     * @param channelId the id of the channel
+     * @return the lock
+     */
+    private Object lockFor(String channelId){
+        return locks.computeIfAbsent(channelId, id -> new Object());
+    }
+
+    /**
+     * Method that will write a string that may be null as its length followed by its utf-8 bytes
+     */
+    private void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Method that will read a string written by writeText
+     */
+    private String readText(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Method that will step over a string written by writeText
+     */
+    private void skipText(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+
+    private Path indexFile(String channelId){
+        return directory.resolve(channelId + ".idx");
+    }
+
+    private Path dataFile(String channelId){
+        return directory.resolve(channelId + ".dat");
+    }
+
+    private Path indexTemp(String channelId){
+        return directory.resolve(channelId + ".idx.part");
+    }
+
+    private Path dataTemp(String channelId){
+        return directory.resolve(channelId + ".dat.part");
+    }
+
+    /**
+     * Class that holds a day page read from the archive and when it was stored
+     */
+    public static class Page {
+        private final long storedAt;
+        private final ArrayList<Program> programs;
+
+        public Page(long storedAt, ArrayList<Program> programs){
+            this.storedAt = storedAt;
+            this.programs = programs;
+        }
+        public long getStoredAt(){
+            return storedAt;
+        }
+        public ArrayList<Program> getPrograms(){
+            return programs;
+        }
+    }
+}
@@ -1,15 +1,25 @@
 package se.umu.cs.appjava.model;
-import org.xml.sax.SAXException;
-
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.ZonedDateTime;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 /**
- * Class that will build the schedule for a channel. It will parse the api twice and filter out the programs that are not
- * within the 12 hour time frame. The worker can the get the final schedule with the method getPrograms().
+ * Class that will build the schedule for a channel. It will parse the api once for every day the window of the
+ * channel covers and filter out the programs that are not within the window. The days are fetched at the same time
+ * with one parser each, so the wait is about one round trip. The worker can the get the final schedule with the
+ * method getPrograms(). A builder can also be given a range of its own, to load the day that is added when the window
+ * of the channel grows.
+ * If a program listener is given it is told about every program in the window, in order, as soon as it has been
+ * parsed. Programs of a later day that are parsed before the days before it are done are held back until they are.
+ * A program that runs over midnight is on the pages of both days, it is only streamed and added once.
  *
  * @author Jonatan Westling
  * @version 1.0
@@ -17,65 +27,344 @@ import java.util.ArrayList;
  */
 
 public class ScheduleBuilder {
-    private ArrayList<Program> twelveHourPast;
-    private ArrayList<Program> twelveHourFuture;
     private ArrayList<Program> finalSchdule;
     private ApiParser apiParser;
     private ChannelInfo channelInfo;
+    private final ScheduleArchive archive;
+    private final DayPageCache pageCache;
+    private final boolean preferArchive;
+    private final Consumer<Program> programListener;
+    //the bounds of the window in epoch seconds
+    private long windowStart;
+    private long windowEnd;
+    //guards the hand over from one page to the next when streaming
+    private final Object streamLock = new Object();
+    //the page whose programs go straight to the listener, the programs of later pages are held back
+    private int streamedPage;
+    private boolean[] pageDone;
+    private final ArrayList<ArrayList<Program>> heldBack = new ArrayList<>();
+    //the last program passed on to the listener
+    private Program lastStreamed;
+
+    /**
+     * Constructor for the schedule builder
+     * @param channelInfo the channel to build the schedule for
+     * @param apiParser the parser to use
+     * @param preferArchive true if recently archived pages should be used without asking the api, false to always
+     *                      fetch the pages of today and later as when the user asks for an update
+     */
+    public ScheduleBuilder(ChannelInfo channelInfo, ApiParser apiParser, boolean preferArchive) throws IOException, XMLStreamException {
+        this(channelInfo, apiParser, preferArchive, null);
+    }
 
-    public ScheduleBuilder(ChannelInfo channelInfo, ApiParser apiParser) throws IOException, ParserConfigurationException, SAXException {
+    /**
+     * Constructor for the schedule builder that streams the programs while building
+     * @param channelInfo the channel to build the schedule for
+     * @param apiParser the parser to use
+     * @param preferArchive true if recently archived pages should be used without asking the api
+     * @param programListener told about every program in the window as soon as it is parsed, can be null
+     */
+    public ScheduleBuilder(ChannelInfo channelInfo, ApiParser apiParser, boolean preferArchive, Consumer<Program> programListener) throws IOException, XMLStreamException {
+        this(channelInfo, apiParser, preferArchive, programListener, Instant.now().getEpochSecond(), channelInfo.getWindow());
+    }
+
+    /**
+     * Constructor for the schedule builder of the window of the channel at a given time
+     */
+    private ScheduleBuilder(ChannelInfo channelInfo, ApiParser apiParser, boolean preferArchive, Consumer<Program> programListener,
+                            long now, ScheduleWindow window) throws IOException, XMLStreamException {
+        this(channelInfo, apiParser, preferArchive, programListener, window.getStart(now), window.getEnd(now));
+    }
+
+    /**
+     * Constructor for the schedule builder of a range of its own
+     * @param channelInfo the channel to build the schedule for
+     * @param apiParser the parser to use
+     * @param preferArchive true if recently archived pages should be used without asking the api
+     * @param programListener told about every program in the range as soon as it is parsed, can be null
+     * @param windowStart the start of the range in epoch seconds, programs starting at it are not included
+     * @param windowEnd the end of the range in epoch seconds, programs starting at it are not included
+     */
+    public ScheduleBuilder(ChannelInfo channelInfo, ApiParser apiParser, boolean preferArchive, Consumer<Program> programListener,
+                           long windowStart, long windowEnd) throws IOException, XMLStreamException {
         this.channelInfo = channelInfo;
         this.apiParser = apiParser;
+        this.preferArchive = preferArchive;
+        this.programListener = programListener;
+        this.archive = ScheduleArchive.getInstance();
+        this.pageCache = DayPageCache.getInstance();
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
         finalSchdule = new ArrayList<>();
         buildSchedule();
     }
 
     /**
-     * Method that will build the schedule for a channel
+     * Method that will build the schedule for a channel. The first day is parsed on the calling thread and the other
+     * days on the execution backend with a parser each, then the results are merged in order.
+     */
+    private void buildSchedule() throws IOException, XMLStreamException {
+        //every day the window touches has a page of its own
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate firstDate = Instant.ofEpochSecond(windowStart).atZone(zone).toLocalDate();
+        LocalDate lastDate = Instant.ofEpochSecond(windowEnd).atZone(zone).toLocalDate();
+        ArrayList<LocalDate> dates = new ArrayList<>();
+        for (LocalDate date = firstDate; !date.isAfter(lastDate); date = date.plusDays(1)) {
+            dates.add(date);
+            heldBack.add(new ArrayList<>());
+        }
+        pageDone = new boolean[dates.size()];
+        ArrayList<Future<ArrayList<Program>>> laterPages = new ArrayList<>();
+        for (int page = 1; page < dates.size(); page++) {
+            //the parser is stateful so every page gets a parser of its own
+            ApiParser pageParser = new ApiParser(apiParser.getTransport());
+            LocalDate date = dates.get(page);
+            int pageNumber = page;
+            laterPages.add(ExecutionBackend.getInstance().getExecutor()
+                    .submit(() -> fetchStreamed(pageParser, date, pageNumber)));
+        }
+        try {
+            filterPrograms(fetchStreamed(apiParser, dates.get(0), 0));
+            for (Future<ArrayList<Program>> page : laterPages) {
+                filterPrograms(awaitPage(page));
+            }
+        } finally {
+            //if a page failed there is no use for the rest
+            laterPages.forEach(page -> page.cancel(true));
+        }
+    }
+
+    /**
+     * Method that will get the page of a day and pass its programs on to the listener in order
+     * @param parser the parser to fetch with
+     * @param date the day of the page
+     * @param page the number of the page in the window
+     * @return the programs of the page
      */
-    private void buildSchedule() throws IOException, ParserConfigurationException, SAXException {
-        //get today's date
-        LocalDateTime timeNow = LocalDateTime.now();
-        LocalDateTime pastTime = timeNow.minusHours(12);
-        LocalDateTime futureTime = timeNow.plusHours(12);
-        //format the date
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        //get date for 12 hours in the past
-        String pastDate = timeNow.minusHours(12).format(formatter);
-        //to store all programs in
-        twelveHourPast = new ArrayList<>();
-        apiParser.parse("https://api.sr.se/api/v2/scheduledepisodes/?channelid=" + channelInfo.getChannelId() + "&date=" + pastDate + "&pagination=false");
-        twelveHourPast = apiParser.getPrograms();
+    private ArrayList<Program> fetchStreamed(ApiParser parser, LocalDate date, int page) throws IOException, XMLStreamException {
+        ArrayList<Program> programs = fetchPage(parser, date, program -> stream(page, program));
+        pageStreamed(page);
+        return programs;
+    }
 
-        filterPrograms(twelveHourPast, pastTime, futureTime);
+    /**
+     * Method that will pass a program on to the listener, or hold it back if a page before it is still being parsed
+     * so the listener always gets the programs in order
+     * @param page the number of the page the program is on
+     * @param program the program that was parsed
+     */
+    private void stream(int page, Program program){
+        if (programListener == null || !isInWindow(program)) {
+            return;
+        }
+        synchronized (streamLock) {
+            if (page == streamedPage) {
+                passOn(program);
+            } else {
+                heldBack.get(page).add(program);
+            }
+        }
+    }
 
-        String futureDate = timeNow.plusHours(12).format(formatter);
-        twelveHourFuture = new ArrayList<>();
-        apiParser.parse("https://api.sr.se/api/v2/scheduledepisodes/?channelid=" + channelInfo.getChannelId() + "&date=" + futureDate + "&pagination=false");
-        twelveHourFuture = apiParser.getPrograms();
+    /**
+     * Method that will pass on the programs that were held back once the pages before them are done
+     * @param page the number of the page that is done
+     */
+    private void pageStreamed(int page){
+        synchronized (streamLock) {
+            pageDone[page] = true;
+            while (streamedPage < pageDone.length && pageDone[streamedPage]) {
+                streamedPage++;
+                if (streamedPage < pageDone.length) {
+                    ArrayList<Program> programs = heldBack.get(streamedPage);
+                    if (programListener != null) {
+                        programs.forEach(this::passOn);
+                    }
+                    programs.clear();
+                }
+            }
+        }
+    }
 
-        filterPrograms(twelveHourFuture, pastTime, futureTime);
+    /**
+     * Method that will pass a program on to the listener unless it repeats the program passed on before it, must hold
+     * the stream lock
+     * @param program the program
+     */
+    private void passOn(Program program){
+        if (!repeats(lastStreamed, program)) {
+            programListener.accept(program);
+            lastStreamed = program;
+        }
     }
 
     /**
-     * Method that will filter out the programs that have times outside the bounds
+     * Method that will get the page of a day, from the page cache or the archive if it can be trusted and otherwise
+     * from the api. A page that was archived after its day had ended never changes so it is always taken from the
+     * archive, a page of a day that has passed but was archived before the day was over is fetched once more. A fetched
+     * page is archived and cached, and if the api fails or sends a page that can not be read, also when it breaks off
+     * in the middle, the archived page is used instead. When the pages of today and later should be fetched again they
+     * are not looked up in the page cache.
+     * @param parser the parser to fetch with
+     * @param date the day of the page
+     * @param stream told about every program of the page as soon as it is available
+     * @return the programs of the page
+     */
+    private ArrayList<Program> fetchPage(ApiParser parser, LocalDate date, Consumer<Program> stream) throws IOException, XMLStreamException {
+        boolean isPast = date.isBefore(LocalDate.now());
+        if (isPast || preferArchive) {
+            List<Program> cached = pageCache.get(channelInfo.getChannelId(), date);
+            if (cached != null) {
+                cached.forEach(stream);
+                return new ArrayList<>(cached);
+            }
+        }
+        ScheduleArchive.Page archived = loadArchived(date);
+        if (archived != null) {
+            //the schedule of a day can change until the day is over, so only a page stored after that is final
+            boolean isFinal = archived.getStoredAt() >= endOfDay(date);
+            //an archived page is trusted as long as a cached page of the same day and age would be
+            boolean isRecent = System.currentTimeMillis() - archived.getStoredAt()
+                    <= DayPageCache.timeToLive(date, archived.getStoredAt());
+            if (isFinal || (preferArchive && isRecent)) {
+                pageCache.put(channelInfo.getChannelId(), date, archived.getPrograms(), archived.getStoredAt());
+                archived.getPrograms().forEach(stream);
+                return archived.getPrograms();
+            }
+        }
+        parser.setProgramListener(stream);
+        try {
+            parser.parse(buildLink(date));
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            if (archived != null) {
+                //the programs streamed before the page broke off are the first programs of the archived page, and are
+                //left out when the archived page is streamed as they repeat the last streamed program or start before it
+                archived.getPrograms().forEach(stream);
+                return archived.getPrograms();
+            }
+            throw e;
+        } finally {
+            parser.setProgramListener(null);
+        }
+        ArrayList<Program> programs = parser.getPrograms();
+        pageCache.put(channelInfo.getChannelId(), date, programs, System.currentTimeMillis());
+        try {
+            archive.store(channelInfo.getChannelId(), date, programs);
+        } catch (IOException e) {
+            System.out.println("Error: could not archive schedule: " + e.getMessage());
+        }
+        return programs;
+    }
+
+    /**
+     * Method that will work out when a day ends
+     * @param date the day
+     * @return the start of the next day in epoch milliseconds
+     */
+    private static long endOfDay(LocalDate date){
+        return date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Method that will read a page from the archive, a broken archive is treated as an empty one
+     * @param date the day of the page
+     * @return the page or null
+     */
+    private ScheduleArchive.Page loadArchived(LocalDate date){
+        try {
+            return archive.load(channelInfo.getChannelId(), date);
+        } catch (IOException e) {
+            System.out.println("Error: could not read archived schedule: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method that will build the link to the schedule of the channel for a date
+     * @param date the date of the schedule
+     * @return the link to the api
+     */
+    private String buildLink(LocalDate date){
+        return "https://api.sr.se/api/v2/scheduledepisodes/?channelid=" + channelInfo.getChannelId() + "&date=" + date.format(DateTimeFormatter.ISO_LOCAL_DATE) + "&pagination=false";
+    }
+
+    /**
+     * Method that will wait for a page parsed on the execution backend and rethrow its error as the same exception the
+     * parser would have thrown on the calling thread.
+     * @param page the page being parsed
+     * @return the programs of the page
+     */
+    private ArrayList<Program> awaitPage(Future<ArrayList<Program>> page) throws IOException, XMLStreamException {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for schedule", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Method that will filter out the programs that have times outside the bounds. The page is indexed by start
+     * time so the programs in the window are found with two binary searches and come out in start order. A program
+     * that runs over midnight can be on two pages, it is only added once.
      * @param schedule the schedule of the day
-     * @param pastTime the maximum time limit in past
-     * @param futureTime the maximum time limit in future
-     */
-    private void filterPrograms(ArrayList<Program> schedule, LocalDateTime pastTime, LocalDateTime futureTime){
-        //now filter the programs
-        for (Program program : schedule){
-            //get the start time for the program and convert it to local date time
-            ZonedDateTime programStartZonedDate = program.getZonedLocalDateStartTime();
-            LocalDateTime programsStartLocalDate = programStartZonedDate.toLocalDateTime();
-            //check if the program is within the bounds
-            if (programsStartLocalDate.isAfter(pastTime) && programsStartLocalDate.isBefore(futureTime)){
+     */
+    private void filterPrograms(ArrayList<Program> schedule){
+        List<Program> programs = new ScheduleIndex(schedule).startingBetween(windowStart, windowEnd);
+        Program last = finalSchdule.isEmpty() ? null : finalSchdule.get(finalSchdule.size() - 1);
+        for (Program program : programs) {
+            if (!repeats(last, program)) {
                 finalSchdule.add(program);
             }
         }
     }
 
+    /**
+     * Method that will check if a program repeats what is already in the schedule, that is if it starts before the
+     * last program or is the last program again, by start time and episode id
+     * @param last the last program in the schedule, or null if it is empty
+     * @param program the program to check
+     * @return true if the program should be left out
+     */
+    private static boolean repeats(Program last, Program program){
+        if (last == null) {
+            return false;
+        }
+        int byStart = Long.compare(program.getStartEpochSecond(), last.getStartEpochSecond());
+        return byStart < 0 || (byStart == 0 && Objects.equals(program.getEpisodeId(), last.getEpisodeId()));
+    }
+
+    /**
+     * Method that will check if a program starts within the bounds
+     * @param program the program to check
+     * @return true if the program is within the bounds
+     */
+    private boolean isInWindow(Program program){
+        long start = program.getStartEpochSecond();
+        return start > windowStart && start < windowEnd;
+    }
+
+    /**
+     * Getters for the bounds of the range the schedule was built for
+     * @return the bound in epoch seconds, programs starting at it are not included
+     */
+    public long getWindowStart(){
+        return windowStart;
+    }
+    public long getWindowEnd(){
+        return windowEnd;
+    }
+
     /**
      * Getter for the final schedule
      * @return the final schedule
@@ -0,0 +1,170 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class that finds what has changed between two versions of a schedule, so a view can update only the rows that
+ * changed instead of building the whole table again. Programs are matched by episode id and start time. Both lists
+ * are walked once in start order, like a merge, and the changes come out as row inserts, deletes and updates that
+ * turn the old list into the new one when they are applied in order, each at the row it names. When a schedule only
+ * slides forward the changes can also be built from the parts that changed, without walking the whole schedule.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ScheduleDiff {
+    private final List<Change> changes;
+
+    /**
+     * The kinds of change a row can have
+     */
+    public enum Kind {
+        INSERT, DELETE, UPDATE
+    }
+
+    private ScheduleDiff(List<Change> changes){
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Method that will find the changes between two schedules
+     * @param shown the schedule that is shown now, in start order
+     * @param updated the new schedule, in start order
+     * @return the changes
+     */
+    public static ScheduleDiff between(List<Program> shown, List<Program> updated){
+        ArrayList<Change> changes = new ArrayList<>();
+        merge(changes, shown, updated, 0);
+        return new ScheduleDiff(changes);
+    }
+
+    /**
+     * Method that will build the changes of a schedule that has slid forward: the first programs have been dropped,
+     * the programs after them are kept as they were and the part at the end has been fetched again
+     * @param dropped the programs that were dropped from the start, in start order
+     * @param kept the number of programs after them that are kept as they were
+     * @param shownTail the programs at the end before they were fetched again, in start order
+     * @param updatedTail the programs at the end after they were fetched again, in start order
+     * @return the changes
+     */
+    public static ScheduleDiff slide(List<Program> dropped, int kept, List<Program> shownTail, List<Program> updatedTail){
+        ArrayList<Change> changes = new ArrayList<>();
+        for (Program program : dropped) {
+            changes.add(new Change(Kind.DELETE, 0, program));
+        }
+        merge(changes, shownTail, updatedTail, kept);
+        return new ScheduleDiff(changes);
+    }
+
+    /**
+     * Method that will walk two schedules in start order and add the changes between them
+     * @param changes the list to add the changes to
+     * @param shown the schedule that is shown now, in start order
+     * @param updated the new schedule, in start order
+     * @param row the row of the first program of the schedules in the table
+     */
+    private static void merge(ArrayList<Change> changes, List<Program> shown, List<Program> updated, int row){
+        int i = 0;
+        int j = 0;
+        //row is the row in the table as the changes so far have been applied
+        while (i < shown.size() || j < updated.size()) {
+            if (j == updated.size()) {
+                changes.add(new Change(Kind.DELETE, row, shown.get(i++)));
+            } else if (i == shown.size()) {
+                changes.add(new Change(Kind.INSERT, row++, updated.get(j++)));
+            } else {
+                Program before = shown.get(i);
+                Program after = updated.get(j);
+                int order = compareKeys(before, after);
+                if (order == 0) {
+                    if (!sameContent(before, after)) {
+                        changes.add(new Change(Kind.UPDATE, row, after));
+                    }
+                    row++;
+                    i++;
+                    j++;
+                } else if (order < 0) {
+                    //the old program is gone
+                    changes.add(new Change(Kind.DELETE, row, before));
+                    i++;
+                } else {
+                    changes.add(new Change(Kind.INSERT, row++, after));
+                    j++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that will order two programs by start time and then by episode id
+     */
+    private static int compareKeys(Program a, Program b){
+        int byStart = Long.compare(a.getStartEpochSecond(), b.getStartEpochSecond());
+        if (byStart != 0) {
+            return byStart;
+        }
+        String idA = a.getEpisodeId() == null ? "" : a.getEpisodeId();
+        String idB = b.getEpisodeId() == null ? "" : b.getEpisodeId();
+        return idA.compareTo(idB);
+    }
+
+    /**
+     * Method that will check if two programs with the same key show the same thing
+     */
+    private static boolean sameContent(Program a, Program b){
+        return a.getEndEpochSecond() == b.getEndEpochSecond()
+                && Objects.equals(a.getProgramName(), b.getProgramName())
+                && Objects.equals(a.getDescription(), b.getDescription())
+                && Objects.equals(a.getImage(), b.getImage());
+    }
+
+    /**
+     * Getter for the changes
+     * @return the changes in the order they must be applied
+     */
+    public List<Change> getChanges(){
+        return changes;
+    }
+
+    /**
+     * Method that will check if anything changed
+     * @return true if the schedules are the same
+     */
+    public boolean isEmpty(){
+        return changes.isEmpty();
+    }
+
+    /**
+     * Class that holds the change of one row
+     */
+    public static final class Change {
+        private final Kind kind;
+        private final int row;
+        private final Program program;
+
+        private Change(Kind kind, int row, Program program){
+            this.kind = kind;
+            this.row = row;
+            this.program = program;
+        }
+
+        /**
+         * Getters for the change
+         * @return the kind, the row it applies to and the program, the new program for an insert or update and the
+         * removed program for a delete
+         */
+        public Kind getKind(){
+            return kind;
+        }
+        public int getRow(){
+            return row;
+        }
+        public Program getProgram(){
+            return program;
+        }
+    }
+}
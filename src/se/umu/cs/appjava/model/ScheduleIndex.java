@@ -0,0 +1,188 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class that indexes the programs of one channel by time so "what is on at time T" can be answered with a binary
+ * search instead of looking at every program. The programs are sorted by start time and the start and end times
+ * are kept in primitive arrays. For every position the latest end time so far is also kept, so programs that
+ * overlap are still found without scanning the whole schedule. An index never changes after it has been built.
+ * The index of the schedule of a channel also carries the version of the schedule it was built from, which goes up
+ * by one every time the schedule of the channel is changed.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ScheduleIndex {
+    public static final ScheduleIndex EMPTY = new ScheduleIndex(List.of());
+    private final Program[] programs;
+    private final long[] starts;
+    private final long[] ends;
+    //the latest end time of the programs up to and including each position
+    private final long[] maxEnds;
+    private final long version;
+
+    /**
+     * Constructor for the index
+     * @param schedule the programs to index, in any order
+     */
+    public ScheduleIndex(List<Program> schedule){
+        this(schedule, 0);
+    }
+
+    /**
+     * Constructor for the index of a version of the schedule of a channel
+     * @param schedule the programs to index, in any order
+     * @param version the version of the schedule
+     */
+    public ScheduleIndex(List<Program> schedule, long version){
+        this.version = version;
+        programs = schedule.toArray(new Program[0]);
+        //a stable sort keeps the api order of programs that start at the same time
+        Arrays.sort(programs, Comparator.comparingLong(Program::getStartEpochSecond));
+        starts = new long[programs.length];
+        ends = new long[programs.length];
+        maxEnds = new long[programs.length];
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < programs.length; i++) {
+            starts[i] = programs[i].getStartEpochSecond();
+            ends[i] = programs[i].getEndEpochSecond();
+            maxEnd = Math.max(maxEnd, ends[i]);
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    /**
+     * Getter for the version of the schedule the index was built from
+     * @return the version, 0 for an index that is not the schedule of a channel
+     */
+    public long getVersion(){
+        return version;
+    }
+
+    /**
+     * Method that will find the position of the program that is on at a time. If programs overlap the one that
+     * started last wins.
+     * @param epochSecond the time in seconds since the epoch
+     * @return the position in the sorted schedule, or -1 if nothing is on
+     */
+    public int indexAt(long epochSecond){
+        int i = lastStartingAtOrBefore(epochSecond);
+        //walk back only as long as an earlier program could still be running
+        while (i >= 0 && maxEnds[i] > epochSecond) {
+            if (ends[i] > epochSecond) {
+                return i;
+            }
+            i--;
+        }
+        return -1;
+    }
+
+    /**
+     * Method that will find the program that is on at a time
+     * @param epochSecond the time in seconds since the epoch
+     * @return the program or null if nothing is on
+     */
+    public Program programAt(long epochSecond){
+        int i = indexAt(epochSecond);
+        return i == -1 ? null : programs[i];
+    }
+
+    /**
+     * Method that will find the program that starts next after a time
+     * @param epochSecond the time in seconds since the epoch
+     * @return the program or null if nothing starts after the time
+     */
+    public Program programAfter(long epochSecond){
+        int i = lastStartingAtOrBefore(epochSecond) + 1;
+        return i < programs.length ? programs[i] : null;
+    }
+
+    /**
+     * Method that will return the programs that start strictly between two times
+     * @param from the start of the range in seconds since the epoch, not included
+     * @param to the end of the range in seconds since the epoch, not included
+     * @return the programs in start order
+     */
+    public ArrayList<Program> startingBetween(long from, long to){
+        int first = lastStartingAtOrBefore(from) + 1;
+        int end = firstStartingAtOrAfter(to);
+        ArrayList<Program> range = new ArrayList<>(Math.max(0, end - first));
+        for (int i = first; i < end; i++) {
+            range.add(programs[i]);
+        }
+        return range;
+    }
+
+    /**
+     * Method that will return all programs sorted by start time
+     * @return the programs
+     */
+    public List<Program> getPrograms(){
+        return Collections.unmodifiableList(Arrays.asList(programs));
+    }
+
+    /**
+     * Getters for the program at a position in the sorted schedule and its start and end time
+     * @param position the position
+     * @return the program, or its start or end time in seconds since the epoch
+     */
+    public Program get(int position){
+        return programs[position];
+    }
+    public long getStart(int position){
+        return starts[position];
+    }
+    public long getEnd(int position){
+        return ends[position];
+    }
+
+    /**
+     * Getter for the number of programs
+     * @return the number of programs
+     */
+    public int size(){
+        return programs.length;
+    }
+
+    /**
+     * Method that will find the last position with a start time at or before a time
+     * @return the position or -1 if every program starts later
+     */
+    private int lastStartingAtOrBefore(long epochSecond){
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= epochSecond) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Method that will find the first position with a start time at or after a time
+     * @return the position or the number of programs if every program starts earlier
+     */
+    private int firstStartingAtOrAfter(long epochSecond){
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] < epochSecond) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,56 @@
+package se.umu.cs.appjava.model;
+
+import java.util.List;
+
+/**
+ * Class that is one version of the schedule of a channel. A snapshot never changes, a channel that gets a new
+ * schedule publishes a new snapshot with the next version, so a snapshot can be read from any thread without locks
+ * and two reads of the same snapshot always agree. The programs are the ones of the index of the snapshot.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ScheduleSnapshot {
+    public static final ScheduleSnapshot EMPTY = new ScheduleSnapshot(ScheduleIndex.EMPTY, 0, false);
+    private final ScheduleIndex index;
+    private final long loadedUntil;
+    private final boolean cached;
+
+    private ScheduleSnapshot(ScheduleIndex index, long loadedUntil, boolean cached){
+        this.index = index;
+        this.loadedUntil = loadedUntil;
+        this.cached = cached;
+    }
+
+    /**
+     * Method that will build the next version of the schedule
+     * @param programs the programs of the new schedule in start order
+     * @param loadedUntil the end of the part of the schedule that has been fetched, in epoch seconds
+     * @return the new snapshot, its version is one more than the version of this one
+     */
+    public ScheduleSnapshot next(List<Program> programs, long loadedUntil){
+        return new ScheduleSnapshot(new ScheduleIndex(programs, getVersion() + 1), loadedUntil, true);
+    }
+
+    /**
+     * Getters for the snapshot
+     * @return the index of the schedule, the programs in start order, the version, the end of the fetched part of the
+     * schedule in epoch seconds (0 if nothing has been fetched through the window) and if there is a schedule at all
+     */
+    public ScheduleIndex getIndex(){
+        return index;
+    }
+    public List<Program> getPrograms(){
+        return index.getPrograms();
+    }
+    public long getVersion(){
+        return index.getVersion();
+    }
+    public long getLoadedUntil(){
+        return loadedUntil;
+    }
+    public boolean isCached(){
+        return cached;
+    }
+}
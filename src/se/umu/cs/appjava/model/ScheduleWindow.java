@@ -0,0 +1,83 @@
+package se.umu.cs.appjava.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that describes how far back and forward from now the schedule of a channel reaches. A channel starts with
+ * the window that is set with the system property radioinfo.window.hours (12 hours each way unless set), and the
+ * window grows one day at a time towards the past or the future as the user scrolls to the edge of the schedule,
+ * until it reaches the limit set with radioinfo.window.days (at most 7 days each way). The window is relative to now,
+ * so it moves with the clock. Windows are immutable, growing one gives a new window.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public final class ScheduleWindow {
+    //the most days the schedule may reach in each direction
+    public static final int MAX_DAYS = 7;
+    private static final long DAY_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    private static final long INITIAL_SECONDS = TimeUnit.HOURS.toSeconds(
+            Math.max(1, Math.min(MAX_DAYS * 24, Integer.getInteger("radioinfo.window.hours", 12))));
+    private static final long LIMIT_SECONDS = Math.max(INITIAL_SECONDS, TimeUnit.DAYS.toSeconds(
+            Math.max(0, Math.min(MAX_DAYS, Integer.getInteger("radioinfo.window.days", MAX_DAYS)))));
+    private static final ScheduleWindow INITIAL = new ScheduleWindow(INITIAL_SECONDS, INITIAL_SECONDS);
+    private final long pastSeconds;
+    private final long futureSeconds;
+
+    /**
+     * The two edges a window can grow at
+     */
+    public enum Edge {
+        PAST, FUTURE
+    }
+
+    private ScheduleWindow(long pastSeconds, long futureSeconds){
+        this.pastSeconds = pastSeconds;
+        this.futureSeconds = futureSeconds;
+    }
+
+    /**
+     * Getter for the window a channel starts with
+     * @return the configured window
+     */
+    public static ScheduleWindow initial(){
+        return INITIAL;
+    }
+
+    /**
+     * Getters for the bounds of the window
+     * @param now the time now in epoch seconds
+     * @return the start or the end of the window in epoch seconds
+     */
+    public long getStart(long now){
+        return now - pastSeconds;
+    }
+    public long getEnd(long now){
+        return now + futureSeconds;
+    }
+
+    /**
+     * Method that will check if the window can grow at an edge
+     * @param edge the edge
+     * @return true if the window has not reached the limit at the edge
+     */
+    public boolean canGrow(Edge edge){
+        return (edge == Edge.PAST ? pastSeconds : futureSeconds) < LIMIT_SECONDS;
+    }
+
+    /**
+     * Method that will grow the window one day at an edge, but not past the limit
+     * @param edge the edge
+     * @return the grown window, or this window if it has reached the limit
+     */
+    public ScheduleWindow grow(Edge edge){
+        if (!canGrow(edge)) {
+            return this;
+        }
+        if (edge == Edge.PAST) {
+            return new ScheduleWindow(Math.min(LIMIT_SECONDS, pastSeconds + DAY_SECONDS), futureSeconds);
+        }
+        return new ScheduleWindow(pastSeconds, Math.min(LIMIT_SECONDS, futureSeconds + DAY_SECONDS));
+    }
+}
@@ -1,76 +1,211 @@
 package se.umu.cs.appjava.model;
 
-import org.xml.sax.SAXException;
-
-import javax.swing.*;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
 
 
 /**
  * This class is used to parse the api in a background thread. Depending on which constructor is used it will either
  * parse the channels or the schedule for a channel. It will then notify the observer when it is done with the parsing.
+ * When a schedule is loaded for the first time the programs are also published while they are parsed, so the view
+ * can show them before the whole schedule is done. A worker can also grow the schedule of a channel by one day at an
+ * edge, then only the new day is fetched and merged into the schedule, or slide the schedule forward with the clock,
+ * then the programs that have fallen out of the window are dropped and only the day at the end of the window is
+ * fetched, and the observer gets the changes instead of the whole schedule.
+ * When the channels are parsed the new list is matched against the one that is shown, the channels that did not
+ * change keep their instances and the observer gets what was added, removed or changed. If the list could not be
+ * fetched the shown list is kept. A worker that refreshes the channels on a timer only logs its errors, as the user did
+ * not ask for it and should not be interrupted while the api is down.
+ * The worker runs on whatever thread runs it and tells the observer from that thread, the observer is the event bus
+ * that passes everything on to the EDT in batches, so a worker does not add tasks of its own to the EDT.
  *
  * @author jonatanwestling
  * @version 1.0
  * @date 2024-01-05
  */
-public class Worker extends SwingWorker<Void, Void> {
+public class Worker implements Runnable {
     private final ApiParser apiParser;
     private final ChannelInfo channelInfo;
+    private final boolean refresh;
+    //the edge to grow the schedule at, null when the whole schedule is fetched
+    private final ScheduleWindow.Edge edge;
+    //true when the schedule should slide forward instead of being fetched as a whole
+    private final boolean slide;
+    //the channels that are shown now, only used by the channel parser
+    private final ChannelRegistry previousChannels;
+    //true when errors are only logged instead of told to the observer
+    private final boolean quiet;
     private Observer observer;
     //constructor for channel parser
     public Worker(){
-        this.apiParser = new ApiParser();
-        this.channelInfo = null;
+        this(ChannelRegistry.EMPTY);
+    }
+    //constructor for channel parser that refreshes the channels that are shown now
+    public Worker(ChannelRegistry previousChannels){
+        this(null, false, null, false, previousChannels, false);
+    }
+    //constructor for schedule parser, refresh is true when an already shown schedule should be fetched again
+    public Worker(ChannelInfo channelInfo, boolean refresh){
+        this(channelInfo, refresh, null, false, null, false);
     }
-    //constructor for schedule parser
-    public Worker(ChannelInfo channelInfo){
-        this.apiParser = new ApiParser();
+    //constructor for a worker that grows the schedule of a channel by a day at an edge
+    public Worker(ChannelInfo channelInfo, ScheduleWindow.Edge edge){
+        this(channelInfo, true, edge, false, null, false);
+    }
+    private Worker(ChannelInfo channelInfo, boolean refresh, ScheduleWindow.Edge edge, boolean slide,
+                   ChannelRegistry previousChannels, boolean quiet){
+        this.apiParser = new ApiParser(HttpTransport.getInstance());
         this.channelInfo = channelInfo;
+        this.refresh = refresh;
+        this.edge = edge;
+        this.slide = slide;
+        this.previousChannels = previousChannels;
+        this.quiet = quiet;
+    }
+
+    /**
+     * Method that will create a worker that slides the schedule of a channel forward with the clock
+     * @param channelInfo the channel
+     * @return the worker
+     */
+    public static Worker slider(ChannelInfo channelInfo){
+        return new Worker(channelInfo, true, null, true, null, false);
+    }
+
+    /**
+     * Method that will create a worker that refreshes the channels on a timer, its errors are only logged
+     * @param previousChannels the channels that are shown now
+     * @return the worker
+     */
+    public static Worker channelRefresher(ChannelRegistry previousChannels){
+        return new Worker(null, false, null, false, previousChannels, true);
     }
     /**
      * Method that will parse the api in a background thread.
-     *
-     * @return null
      */
     @Override
-    protected Void doInBackground()  {
+    public void run()  {
         if (channelInfo == null){
-            //no channel info passed, parse channels
+            //no channel info passed, parse channels, the shown channels are kept if it fails
+            ChannelRegistry channels = previousChannels;
             try {
                 apiParser.parse("https://api.sr.se/api/v2/channels/?pagination=false");
+                channels = apiParser.getChannelRegistry().reuse(previousChannels);
             } catch (IOException e) {
                 messageObserverWithError("Could not connect to: " + e.getMessage() + ", please check network connection");
-            } catch (ParserConfigurationException e) {
-                messageObserverWithError("An internal error with the parser occurred");
-            } catch (SAXException e) {
+            } catch (XMLStreamException e) {
                 messageObserverWithError("Format from api seems unsupported");
             } catch (RuntimeException e){
                 messageObserverWithError("Invalid response code from server : " + e.getMessage());
             }
-            messageObserverWithChannels(apiParser.getHasMapOfSortedChannels());
+            messageObserverWithChannels(channels, ChannelDiff.between(previousChannels, channels));
+        } else if (edge != null) {
+            growSchedule();
+        } else if (slide && channelInfo.getLoadedUntil() > 0) {
+            slideSchedule();
         } else {
             //channel info passed, parse schedule
-            ScheduleBuilder scheduleBuilder = null;
+            ScheduleBuilder scheduleBuilder;
+            try {
+                //a refreshed schedule is already shown, so only a first load is streamed
+                scheduleBuilder = new ScheduleBuilder(channelInfo, apiParser, !refresh, refresh ? null : this::publish);
+            } catch (IOException e) {
+                messageObserverWithError("Could not connect to:"+ e.getMessage() +", please check network connection");
+                return;
+            } catch (XMLStreamException e) {
+                messageObserverWithError("Format from api seems unsupported");
+                return;
+            } catch (RuntimeException e){
+                messageObserverWithError("Invalid response code from server : " + e.getMessage());
+                return;
+            }
+            ScheduleSnapshot previous = channelInfo.getSnapshot();
+            //only the window that was fetched is replaced, days the window has grown by meanwhile are kept
+            channelInfo.mergeSchedule(scheduleBuilder.getPrograms(), scheduleBuilder.getWindowStart(), scheduleBuilder.getWindowEnd());
+            //a refresh that changed nothing does not have to reach the EDT at all
+            if (!previous.isCached() || !ScheduleDiff.between(previous.getPrograms(), channelInfo.getSchedule()).isEmpty()) {
+                messageObserverWithSchedule(channelInfo.getChannelId());
+            }
+        }
+    }
+    /**
+     * Method that will fetch the day just outside an edge of the window of the channel and merge it into the
+     * schedule. The window is only grown if the day could be fetched.
+     */
+    private void growSchedule(){
+        ScheduleWindow before = channelInfo.getWindow();
+        ScheduleWindow after = before.grow(edge);
+        if (after == before) {
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        //the ranges overlap by a second so a program starting right at the old edge is not missed
+        long from = edge == ScheduleWindow.Edge.PAST ? after.getStart(now) : before.getEnd(now) - 1;
+        long to = edge == ScheduleWindow.Edge.PAST ? before.getStart(now) + 1 : after.getEnd(now);
+        ScheduleBuilder scheduleBuilder;
+        try {
+            scheduleBuilder = new ScheduleBuilder(channelInfo, apiParser, true, null, from, to);
+        } catch (IOException e) {
+            messageObserverWithError("Could not connect to:"+ e.getMessage() +", please check network connection");
+            return;
+        } catch (XMLStreamException e) {
+            messageObserverWithError("Format from api seems unsupported");
+            return;
+        } catch (RuntimeException e){
+            messageObserverWithError("Invalid response code from server : " + e.getMessage());
+            return;
+        }
+        channelInfo.mergeSchedule(scheduleBuilder.getPrograms(), from, to);
+        //a grow at the other edge may have finished meanwhile, so the window is grown from the one that is there now
+        channelInfo.growWindow(edge);
+        if (!scheduleBuilder.getPrograms().isEmpty()) {
+            messageObserverWithSchedule(channelInfo.getChannelId());
+        }
+    }
+    /**
+     * Method that will slide the schedule of the channel forward with the clock. Only the day that holds the end of
+     * the window is fetched, or the two days if the end has passed midnight since the last time, and the part of the
+     * schedule on those days is replaced. The observer is only told if something changed.
+     */
+    private void slideSchedule(){
+        long now = Instant.now().getEpochSecond();
+        ScheduleWindow window = channelInfo.getWindow();
+        long windowStart = window.getStart(now);
+        long windowEnd = window.getEnd(now);
+        //the tail starts at the beginning of the last day that was fetched, but never before the window
+        LocalDate lastDay = Instant.ofEpochSecond(channelInfo.getLoadedUntil() - 1).atZone(ZoneId.systemDefault()).toLocalDate();
+        long from = Math.max(windowStart, lastDay.atStartOfDay(ZoneId.systemDefault()).toEpochSecond() - 1);
+        List<Program> tail = List.of();
+        if (from < windowEnd) {
             try {
-                scheduleBuilder = new ScheduleBuilder(channelInfo, apiParser);
+                tail = new ScheduleBuilder(channelInfo, apiParser, true, null, from, windowEnd).getPrograms();
             } catch (IOException e) {
                 messageObserverWithError("Could not connect to:"+ e.getMessage() +", please check network connection");
-            } catch (ParserConfigurationException e) {
-                messageObserverWithError("An internal error with the parser occurred");
-            } catch (SAXException e) {
+                return;
+            } catch (XMLStreamException e) {
                 messageObserverWithError("Format from api seems unsupported");
+                return;
             } catch (RuntimeException e){
                 messageObserverWithError("Invalid response code from server : " + e.getMessage());
+                return;
             }
-            channelInfo.setSchedule(scheduleBuilder.getPrograms());
-            messageObserverWithSchedule(channelInfo.getChannelName());
         }
-        return null;
+        ChannelInfo.Slide slid = channelInfo.slide(windowStart, tail, from, Math.max(from, windowEnd));
+        if (!slid.getChanges().isEmpty()) {
+            observer.scheduleChanged(channelInfo.getChannelId(), slid.getChanges(), slid.getIndex());
+        }
+    }
+    /**
+     * Method that will pass a program parsed while loading on to the observer, which collects them into batches
+     * @param program the program that was parsed
+     */
+    private void publish(Program program) {
+        observer.programsAvailable(channelInfo.getChannelId(), List.of(program));
     }
     /**
      * Method that will set the observer for this class (the page controller)
@@ -80,20 +215,28 @@ public class Worker extends SwingWorker<Void, Void> {
         this.observer = observer;
     }
     /**
-     * Method that will notify the observer that the parsing is done and send the channels.
+     * Method that will notify the observer that the parsing is done and send the channels and what has changed.
      */
-    private void messageObserverWithChannels(HashMap<String, ArrayList<ChannelInfo>> channels){
-        observer.channelsAvailable(channels);
+    private void messageObserverWithChannels(ChannelRegistry channels, ChannelDiff changes){
+        observer.channelsAvailable(channels, changes);
     }
     /**
      * Method that will notify the observer that the parsing for a channels schedule is done.
-     * it will send the name of the channel since the schedule is stored in the channel object.
-     * @param channelName the name of the channel
+     * it will send the id of the channel since the schedule is stored in the channel object.
+     * @param channelId the id of the channel
      */
-    private void messageObserverWithSchedule(String channelName){
-        observer.scheduleAvailable(channelName);
+    private void messageObserverWithSchedule(String channelId){
+        observer.scheduleAvailable(channelId);
     }
-     private void messageObserverWithError(String message){
+    /**
+     * Method that will tell the observer about an error, or only log it if the user did not ask for the work
+     * @param message the error message
+     */
+    private void messageObserverWithError(String message){
+        if (quiet) {
+            System.out.println("Error: " + message);
+            return;
+        }
         observer.errorOccurred(message);
-     }
+    }
 }
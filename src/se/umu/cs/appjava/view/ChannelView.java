@@ -2,40 +2,75 @@ package se.umu.cs.appjava.view;
 
 import se.umu.cs.appjava.controller.PageController;
 import se.umu.cs.appjava.model.ChannelInfo;
+import se.umu.cs.appjava.model.ExecutionBackend;
+import se.umu.cs.appjava.model.ImageLoader;
 import se.umu.cs.appjava.model.Program;
+import se.umu.cs.appjava.model.ScheduleDiff;
+import se.umu.cs.appjava.model.ScheduleIndex;
+import se.umu.cs.appjava.model.ScheduleWindow;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.time.ZonedDateTime;
-import java.util.ArrayList;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 /**
  * Class that will display a detailed view of a channel as a JPanel.
  * The view will display the name, description and image of the channel.
- * It will also display the schedule for the channel.
+ * It will also display the schedule for the channel. When the schedule is refreshed only the rows that changed are
+ * inserted, removed or updated, so the scroll position and selection are kept, and the changed rows are highlighted
+ * for a short while. The changes are worked out off the EDT. The table reads its cells straight from the snapshot of
+ * the schedule and only formats the rows that are drawn, so a long schedule costs little to show and to scroll. When the
+ * user scrolls close to the first or the last row the controller is asked to load the next day at that edge, and the
+ * rows that are added above keep the rows on screen where they were.
  *
  * @author Jonatan Westling
  * @version 1.0
  * @date 2024-01-05
  */
 public class ChannelView extends JPanel {
+    private static final Color HIGHLIGHT = new Color(255, 200, 80, 90);
+    private static final int HIGHLIGHT_MILLIS = 10000;
+    //how close to an edge of the table, in rows, the user must scroll for the next day to be loaded
+    private static final int EDGE_ROWS = 5;
     private JTable table;
     ChannelInfo channelInfo;
-    private DefaultTableModel model;
-    private ArrayList<Program> schedule;
+    private ScheduleTableModel model;
+    //true when the current running program has been selected while the schedule was streamed in
+    private boolean jumpedToCurrent;
+    //counts every change of the shown schedule, so a diff worked out from an older schedule is not applied
+    private int shownVersion;
+    //the version of the schedule of the channel the rows are the same as, or -1 if they are not the same as any
+    private long mirroredVersion = -1;
+    //the scroll bar as it was at the last adjustment, so rows that were added are not taken for a scroll by the user
+    private int lastScrollValue;
+    private int lastScrollMaximum;
+    //true while the view moves the table itself
+    private boolean movingView;
+    //the programs of rows that were inserted or updated by the last refresh
+    private final Set<Program> highlighted = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Timer highlightTimer;
     private final PageController pageController;
 
     public ChannelView(ChannelInfo channelInfo, PageController pageController){
         this.channelInfo = channelInfo;
         this.pageController = pageController;
+        //clear the highlight of changed rows after a while
+        this.highlightTimer = new Timer(HIGHLIGHT_MILLIS, e -> {
+            highlighted.clear();
+            table.repaint();
+        });
+        highlightTimer.setRepeats(false);
         setLayout(new BorderLayout());
         //create the top panel
-        ImageIcon image = channelInfo.getImage();
-        Image image1 = image.getImage();
-        Image newImage = image1.getScaledInstance(70, 70, Image.SCALE_SMOOTH);
-        ImageIcon newImageIcon = new ImageIcon(newImage);
-        JLabel imageHolder = new JLabel(newImageIcon);
+        //show an empty square until the logo has been loaded
+        JLabel imageHolder = new JLabel(ImageLoader.placeholder(70));
+        ImageLoader.getInstance().loadInto(channelInfo.getImageUrl(), 70,
+                image -> imageHolder.setIcon(new ImageIcon(image)));
 
         JLabel channelName = new JLabel("    " + channelInfo.getChannelName());
         channelName.setFont(new Font("Microsoft JhengHei UI Light", Font.BOLD, 20));
@@ -67,22 +102,32 @@ public class ChannelView extends JPanel {
      * @return the JScrollPane that contains the table.
      */
     private JScrollPane buildScheduleTable(){
-        //now we need to build the schedule
-        //create
-        String[] columnNames = {"Program", "Starttid", "Sluttid"};
-        //init empty table
-        model = new DefaultTableModel(columnNames, 0){
-            //we need to override this method to make the table not editable
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        //init empty table, the model is never editable
+        model = new ScheduleTableModel();
         //create the table to show the schedule
         table = new JTable(model);
         table.getTableHeader().setResizingAllowed(false);
         table.getTableHeader().setReorderingAllowed(false);
         table.setRowHeight(25);
+        //one renderer is reused for every cell, the values are already formatted strings
+        table.setDefaultRenderer(String.class, new DefaultTableCellRenderer(){
+            @Override
+            protected void setValue(Object value) {
+                setText((String) value);
+            }
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                Component cell = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                if (!isSelected) {
+                    boolean changed = !highlighted.isEmpty() && row < model.getRowCount()
+                            && highlighted.contains(model.getProgram(row));
+                    cell.setBackground(changed ? HIGHLIGHT : table.getBackground());
+                }
+                return cell;
+            }
+        });
         table.addMouseListener(new MouseAdapter() {
             public void mousePressed(MouseEvent e) {
                 if (e.getClickCount() == 2 && !e.isConsumed()) {
@@ -90,42 +135,182 @@ public class ChannelView extends JPanel {
                     // Get the row index that was double-clicked
                     int row = table.rowAtPoint(e.getPoint());
                     if (row >= 0) {
-                        pageController.programDoubleClicked(schedule.get(row));
+                        pageController.programDoubleClicked(model.getProgram(row));
                     }
                 }
             }
         });
-        return new JScrollPane(table);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> checkEdges(e.getAdjustable()));
+        return scrollPane;
+    }
+
+    /**
+     * Method that will ask the controller for more of the schedule when the user scrolls close to an edge. The scroll
+     * bar also changes when rows are added or the view moves the table itself, those changes are left out, or a table
+     * that fits on screen would be grown at both edges over and over until the window is as big as it can be.
+     * Nothing is asked for while the schedule is still loading.
+     * @param scrollBar the vertical scroll bar of the table
+     */
+    private void checkEdges(Adjustable scrollBar){
+        int value = scrollBar.getValue();
+        int maximum = scrollBar.getMaximum();
+        boolean scrolled = !movingView && value != lastScrollValue && maximum == lastScrollMaximum;
+        lastScrollValue = value;
+        lastScrollMaximum = maximum;
+        if (!scrolled || model.getRowCount() == 0 || !channelInfo.isScheduleCached()){
+            return;
+        }
+        int margin = EDGE_ROWS * table.getRowHeight();
+        if (scrollBar.getValue() - scrollBar.getMinimum() <= margin){
+            pageController.scheduleEdgeReached(channelInfo, ScheduleWindow.Edge.PAST);
+        }
+        if (scrollBar.getMaximum() - scrollBar.getValue() - scrollBar.getVisibleAmount() <= margin){
+            pageController.scheduleEdgeReached(channelInfo, ScheduleWindow.Edge.FUTURE);
+        }
     }
     /**
      * This method updates the schedule table when the worker has parsed the schedule and notified the controller.
-     * It will also scroll to the current running program if there is one and select it so the user easily can see
-     * which program is currently running.
+     * The difference between the shown schedule and the new one is worked out on a background thread, and only if
+     * something changed are the rows updated on the EDT. Nothing is done if the rows already are the latest version of
+     * the schedule. The first time the table is filled it will also scroll to
+     * the current running program if there is one and select it so the user easily can see which program is
+     * currently running.
      */
     public void updateSchedule(){
-        schedule = channelInfo.getSchedule();
-        ZonedDateTime now = ZonedDateTime.now();
-        int rowCurrentRunningProgram = -1;
-        //clear the table
-        model.setRowCount(0);
-        //add all the programs to the table
-        for (int i = 0; i < schedule.size(); i++){
-            Program program = schedule.get(i);
-            //create the row and add it
-            Object[] object = new Object[]{program.getProgramName(), program.getStartTime(), program.getEndTime()};
-            model.addRow(object);
-            //check if the program is running now
-            if (!now.isBefore(program.getZonedLocalDateStartTime()) && !now.isAfter(program.getZonedLocalDateEndTIme())){
-                //collect the row index of the current running program
-                rowCurrentRunningProgram = i;
+        ScheduleIndex index = channelInfo.getScheduleIndex();
+        if (index.getVersion() == mirroredVersion){
+            //the rows already are this version of the schedule, there is nothing to redraw
+            return;
+        }
+        List<Program> shown = model.snapshot();
+        int version = shownVersion;
+        ExecutionBackend.getInstance().getExecutor().execute(() -> {
+            ScheduleDiff diff = ScheduleDiff.between(shown, index.getPrograms());
+            SwingUtilities.invokeLater(() -> {
+                if (version != shownVersion) {
+                    //the table changed while the diff was worked out, work it out again
+                    updateSchedule();
+                    return;
+                }
+                if (!diff.isEmpty()) {
+                    applyDiff(diff, index);
+                } else {
+                    //the rows are the same, but are read from the new snapshot so the old one can be let go
+                    model.apply(index, diff);
+                }
+                //even without changes the rows are now known to be this version
+                mirroredVersion = index.getVersion();
+            });
+        });
+    }
+
+    /**
+     * This method applies the changes of a schedule that has slid forward. The changes are only applied if the rows
+     * are the schedule they start from, otherwise the difference is worked out from the whole schedule.
+     * @param changes the changes of the schedule
+     * @param index the index of the new schedule
+     */
+    public void applyChanges(ScheduleDiff changes, ScheduleIndex index){
+        if (mirroredVersion != index.getVersion() - 1){
+            updateSchedule();
+            return;
+        }
+        applyDiff(changes, index);
+        mirroredVersion = index.getVersion();
+    }
+
+    /**
+     * Method that will apply the changes of a refresh to the table, firing one event per changed row
+     * @param diff the changes between the shown schedule and the new one
+     * @param index the index of the new schedule, used to find the running program the first time
+     */
+    private void applyDiff(ScheduleDiff diff, ScheduleIndex index){
+        shownVersion++;
+        boolean firstFill = model.getRowCount() == 0;
+        //the first row on screen and how far it is scrolled, so it can be kept in place
+        Rectangle visible = table.getVisibleRect();
+        int anchorRow = table.rowAtPoint(visible.getLocation());
+        int anchorOffset = anchorRow < 0 ? 0 : visible.y - table.getCellRect(anchorRow, 0, true).y;
+        highlighted.clear();
+        //the rows are read from the new index from now on, the model fires one event per change
+        model.apply(index, diff);
+        for (ScheduleDiff.Change change : diff.getChanges()){
+            int row = change.getRow();
+            switch (change.getKind()){
+                case INSERT -> {
+                    highlighted.add(change.getProgram());
+                    if (row <= anchorRow){
+                        anchorRow++;
+                    }
+                }
+                case DELETE -> {
+                    if (row < anchorRow){
+                        anchorRow--;
+                    }
+                }
+                case UPDATE -> highlighted.add(change.getProgram());
             }
         }
-        if (rowCurrentRunningProgram != -1){
-            //if there is a current running program, select it and scroll to it
-            table.setRowSelectionInterval(rowCurrentRunningProgram, rowCurrentRunningProgram);
-            // +7 to put the current running program in the middle of the screen for better visibility
-            table.scrollRectToVisible(table.getCellRect(rowCurrentRunningProgram + 7, 0, true));
+        if (!firstFill && anchorRow >= 0 && model.getRowCount() > 0 && table.getParent() instanceof JViewport viewport){
+            anchorRow = Math.min(anchorRow, model.getRowCount() - 1);
+            movingView = true;
+            viewport.setViewPosition(new Point(visible.x, table.getCellRect(anchorRow, 0, true).y + anchorOffset));
+            movingView = false;
+        }
+        if (firstFill){
+            //a schedule that is shown for the first time is not news, only refreshes are highlighted
+            highlighted.clear();
+            int rowCurrentRunningProgram = index.indexAt(Instant.now().getEpochSecond());
+            if (rowCurrentRunningProgram != -1){
+                selectRow(rowCurrentRunningProgram);
+            }
+        } else if (!highlighted.isEmpty()){
+            highlightTimer.restart();
         }
+    }
 
+    /**
+     * This method adds programs to the end of the table while the schedule is still being parsed. As soon as the
+     * current running program arrives it is selected and scrolled to, the same way as updateSchedule does.
+     * @param programs the next programs of the schedule in order
+     */
+    public void appendPrograms(List<Program> programs){
+        shownVersion++;
+        mirroredVersion = -1;
+        int first = model.getRowCount();
+        //all the rows are added with one event
+        model.append(programs);
+        if (jumpedToCurrent){
+            return;
+        }
+        long now = Instant.now().getEpochSecond();
+        for (int i = 0; i < programs.size(); i++){
+            if (isRunning(programs.get(i), now)){
+                jumpedToCurrent = true;
+                selectRow(first + i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method that will check if the program is running now
+     */
+    private boolean isRunning(Program program, long now){
+        return now >= program.getStartEpochSecond() && now < program.getEndEpochSecond();
+    }
+
+    /**
+     * Method that will select a row and scroll to it
+     * @param row the row to select
+     */
+    private void selectRow(int row){
+        //if there is a current running program, select it and scroll to it
+        table.setRowSelectionInterval(row, row);
+        // +7 to put the current running program in the middle of the screen for better visibility
+        movingView = true;
+        table.scrollRectToVisible(table.getCellRect(row + 7, 0, true));
+        movingView = false;
     }
 }
@@ -1,16 +1,26 @@
 package se.umu.cs.appjava.view;
 import java.util.List;
+import se.umu.cs.appjava.model.ChannelDiff;
 import se.umu.cs.appjava.model.ChannelInfo;
+import se.umu.cs.appjava.model.ChannelRegistry;
+import se.umu.cs.appjava.model.ImageLoader;
 import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
 import java.awt.*;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * This class is the main window of the application. It contains the menu bar and the card panel that holds the different channel views.
  * It is building the meu bar and the home page and is also responsible for updating the channels menu when the api has been parsed.
+ * The submenu of a channel type is only filled the first time it is opened, and a new channel list only touches the
+ * submenus that have channels that were added, removed or changed.
  * It can also display different channel views in the card panel that the controller class decides.
  *
  * @author jonatanwestling
@@ -19,6 +29,9 @@ import java.util.Objects;
  */
 
 public class MainWindow extends JFrame{
+    private static final int ICON_SIZE = 20;
+    //shown until the logo of a channel has been loaded, one instance for all items
+    private static final ImageIcon PLACEHOLDER = ImageLoader.placeholder(ICON_SIZE);
     private JLabel welcomeText;
     private CardLayout cardLayout;
     private JPanel cardPanel;
@@ -28,8 +41,15 @@ public class MainWindow extends JFrame{
     private JMenuItem home;
     private JMenuItem help;
     private JMenuItem update;
+    private JMenuItem statistics;
     private  JMenuItem exit;
     private HashMap<String, ChannelView> channelViews;
+    private NowAndNextView nowAndNextView;
+    //the submenus by channel type, only used on the edt
+    private final HashMap<String, ChannelMenu> channelMenus = new HashMap<>();
+    private JMenuItem loading;
+    private ActionListener channelListener;
+    private ChangeListener hoverListener;
     public MainWindow(){
         channelViews = new HashMap<>();
         initComponents();
@@ -66,7 +86,7 @@ public class MainWindow extends JFrame{
         channels = new JMenu("Kanaler");
         tools = new JMenu("Verktyg");
         //channels will be added as swingworker is done parsing the api
-        JMenuItem loading = new JMenuItem("kanaler laddas...");
+        loading = new JMenuItem("kanaler laddas...");
         loading.setEnabled(false);
         channels.add(loading);
 
@@ -83,6 +103,10 @@ public class MainWindow extends JFrame{
         update = new JMenuItem("Uppdatera");
         update.setActionCommand("update");
         tools.add(update);
+        //create statistics menu item and add action listener
+        statistics = new JMenuItem("Statistik");
+        statistics.setActionCommand("statistics");
+        tools.add(statistics);
         //create exit menu item and add action listener
         exit = new JMenuItem("Avsluta");
         exit.setActionCommand("exit");
@@ -99,72 +123,106 @@ public class MainWindow extends JFrame{
      */
     private void setUpHomePage(){
         JPanel homePage = new JPanel(new BorderLayout());
+        JPanel welcomePanel = new JPanel(new BorderLayout());
         //create header text
         welcomeText = new JLabel("Välkommen till RadioInfo", SwingConstants.CENTER);
         //nice fonts: Microsoft JhengHei UI Light,
         welcomeText.setFont(new Font("Microsoft JhengHei UI Light", Font.PLAIN, 30));
         welcomeText.setBorder(BorderFactory.createEmptyBorder(0, 0, 0, 0));
-        homePage.add(welcomeText, BorderLayout.CENTER);
+        welcomePanel.add(welcomeText, BorderLayout.CENTER);
         //create short info text
         JLabel infoText = new JLabel("Välj en kanal i menyn ovan för att visa information om kanalen", SwingConstants.CENTER);
         infoText.setFont(new Font("Microsoft JhengHei UI Light", Font.PLAIN, 15));
-        infoText.setBorder(BorderFactory.createEmptyBorder(0, 0, 250, 0));
-        homePage.add(infoText, BorderLayout.SOUTH);
+        infoText.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+        welcomePanel.add(infoText, BorderLayout.SOUTH);
         //create image
         ImageIcon imageIcon = new ImageIcon(Objects.requireNonNull(getClass().getClassLoader().getResource("src/images/sr.jpeg")));
         Image image = imageIcon.getImage().getScaledInstance(200, 200, Image.SCALE_SMOOTH);
         imageIcon = new ImageIcon(image);
         JLabel imageHolder = new JLabel(imageIcon);
         imageHolder.setBorder(BorderFactory.createEmptyBorder(40, 0, 0, 0));
-        homePage.add(imageHolder, BorderLayout.NORTH);
+        welcomePanel.add(imageHolder, BorderLayout.NORTH);
+        homePage.add(welcomePanel, BorderLayout.NORTH);
+        //create the card with what is on every channel, it is filled when the list has been fetched
+        nowAndNextView = new NowAndNextView();
+        homePage.add(nowAndNextView, BorderLayout.CENTER);
         //add home page to card panel
         cardPanel.add(homePage, "homePage");
 
     }
 
     /**
-     * This method updates the channels menu
-     * @param channelsMap: the map with the channels
-     * NOTE: To avoid the EDT from freezing when updating the channels menu, the menu is updated in a swingworker
-     */
-    //testing this method for better performance
-    public void updateChannelsMenu(HashMap<String, ArrayList<ChannelInfo>> channelsMap, ActionListener actionListener) {
-        new SwingWorker<Void, JMenu>() {
-            @Override
-            protected Void doInBackground() {
-                // Process data in the background
-                channels.removeAll();
-                channelsMap.forEach((key, channelList) -> {
-                    JMenu submenu = new JMenu(key);
-                    for (ChannelInfo channel : channelList) {
-                        JMenuItem menuItem = new JMenuItem(channel.getName());
-                        //add image to menu item
-                        ImageIcon imageIcon = channel.getImage();
-                        Image image = imageIcon.getImage();
-                        Image newImage = image.getScaledInstance(20, 20, Image.SCALE_SMOOTH);
-                        ImageIcon newImageIcon = new ImageIcon(newImage);
-                        menuItem.setIcon(newImageIcon);
-                        //set the action command as the channel name
-                        menuItem.setActionCommand("is channel" + channel.getName());
-                        menuItem.addActionListener(actionListener);
-                        submenu.add(menuItem);
-                    }
-                    //publish the submenu to the process method
-                    publish(submenu);
-                });
-                return null;
+     * This method updates the channels menu from a new channel list, it must be called on the EDT. Only the submenus
+     * of the types that have changes are touched, and a submenu that has never been opened only gets its new list.
+     * The logos of new and changed channels are decoded in the background right away, so they are usually ready
+     * when a submenu is opened.
+     * @param registry: the registry with the channels
+     * @param changes the channels that were added, removed or changed since the last update
+     * @param actionListener the listener for clicks on a channel
+     * @param hoverListener the listener for when the user hovers over a channel, so it can be prefetched
+     */
+    public void updateChannelsMenu(ChannelRegistry registry, ChannelDiff changes, ActionListener actionListener,
+                                   ChangeListener hoverListener) {
+        this.channelListener = actionListener;
+        this.hoverListener = hoverListener;
+        if (loading != null) {
+            channels.remove(loading);
+            loading = null;
+        }
+        changes.getAdded().forEach(channel -> ImageLoader.getInstance().load(channel.getImageUrl(), ICON_SIZE));
+        changes.getChanged().forEach(channel -> ImageLoader.getInstance().load(channel.getImageUrl(), ICON_SIZE));
+        Set<String> changedTypes = changes.getChannelTypes();
+        //drop the submenus of the types that have no channels left
+        channelMenus.entrySet().removeIf(entry -> {
+            if (registry.getByType(entry.getKey()).isEmpty()) {
+                channels.remove(entry.getValue().menu);
+                return true;
             }
-
-            @Override
-            protected void process(List<JMenu> chunks) {
-                // update the GUI on the EDT
-                for (JMenu submenu : chunks) {
-                    channels.add(submenu);
-                }
+            return false;
+        });
+        int position = 0;
+        for (Map.Entry<String, List<ChannelInfo>> entry : registry.getChannelsByType().entrySet()) {
+            ChannelMenu channelMenu = channelMenus.get(entry.getKey());
+            if (channelMenu == null) {
+                channelMenu = new ChannelMenu(entry.getKey());
+                channelMenus.put(entry.getKey(), channelMenu);
+                channels.insert(channelMenu.menu, position);
+            } else if (channels.getMenuComponent(position) != channelMenu.menu) {
+                //the types are kept in the order they first appear in the list
+                channels.remove(channelMenu.menu);
+                channels.insert(channelMenu.menu, position);
+            }
+            if (changedTypes.contains(entry.getKey())) {
+                channelMenu.setChannels(entry.getValue());
             }
+            position++;
+        }
+    }
 
-        }.execute();
+    /**
+     * Method that will set the text, action command and logo of a menu item from a channel
+     * @param item the menu item
+     * @param channel the channel
+     */
+    private static void describe(JMenuItem item, ChannelInfo channel){
+        item.setText(channel.getName());
+        //set the action command as the channel id
+        item.setActionCommand("is channel" + channel.getChannelId());
+        item.putClientProperty(ChannelInfo.class, channel);
+        BufferedImage logo = ImageLoader.getInstance().peek(channel.getImageUrl(), ICON_SIZE);
+        if (logo != null) {
+            item.setIcon(new ImageIcon(logo));
+            return;
+        }
+        //show the placeholder until the logo has been loaded, unless the item shows another channel by then
+        item.setIcon(PLACEHOLDER);
+        ImageLoader.getInstance().loadInto(channel.getImageUrl(), ICON_SIZE, image -> {
+            if (item.getClientProperty(ChannelInfo.class) == channel) {
+                item.setIcon(new ImageIcon(image));
+            }
+        });
     }
+
     /**
      * Method for setting the action listener for the home menu item
      * @param actionListener the action listener
@@ -189,6 +247,22 @@ public class MainWindow extends JFrame{
         update.addActionListener(actionListener);
     }
 
+    /**
+     * Method for setting the action listener for the statistics menu item
+     * @param actionListener the action listener
+     */
+    public void setStatisticsActionListener(ActionListener actionListener){
+        statistics.addActionListener(actionListener);
+    }
+
+    /**
+     * Method for setting the action listener for double clicks on a channel in the now and next card
+     * @param actionListener the action listener
+     */
+    public void setNowAndNextActionListener(ActionListener actionListener){
+        nowAndNextView.setChannelListener(actionListener);
+    }
+
     /**
      * Method for setting the action listener for the exit menu item
      * @param actionListener the action listener
@@ -197,6 +271,14 @@ public class MainWindow extends JFrame{
         exit.addActionListener(actionListener);
     }
 
+    /**
+     * Getter for the now and next card on the home page
+     * @return the now and next card
+     */
+    public NowAndNextView getNowAndNextView(){
+        return nowAndNextView;
+    }
+
     /**
      * Getter for the cardlayout so the controller can switch between the different views
      * @return the cardlayout
@@ -216,19 +298,106 @@ public class MainWindow extends JFrame{
      * Method for controller to add a channel view to the cardpanel
      *
      * @param channelView the channel view to add
-     * @param channelName the channel name for keeping track of the views
+     * @param channelId the channel id for keeping track of the views
      */
-    public void addChannelView(ChannelView channelView, String channelName){
-        cardPanel.add(channelView, channelName);
-        channelViews.put(channelName, channelView);
+    public void addChannelView(ChannelView channelView, String channelId){
+        cardPanel.add(channelView, channelId);
+        channelViews.put(channelId, channelView);
     }
 
     /**
      * Method for controller to get a channel view
-     * @param channelName the name of the view
+     * @param channelId the id of the channel of the view
      * @return the channel view panel
      */
-    public ChannelView getChannelView(String channelName){
-        return channelViews.get(channelName);
+    public ChannelView getChannelView(String channelId){
+        return channelViews.get(channelId);
+    }
+
+    /**
+     * Method for controller to remove the view of a channel, for example when the channel is gone from the list
+     * @param channelId the id of the channel of the view
+     */
+    public void removeChannelView(String channelId){
+        ChannelView channelView = channelViews.remove(channelId);
+        if (channelView != null) {
+            cardPanel.remove(channelView);
+        }
+    }
+
+    /**
+     * Class that holds the submenu of a channel type. The items are made the first time the submenu is opened, after
+     * that a new list of the channels of the type is applied to the items that are there: items of channels that are
+     * left are kept, and only the items of new, changed and moved channels are touched.
+     */
+    private class ChannelMenu implements MenuListener {
+        private final JMenu menu;
+        private List<ChannelInfo> channelList = List.of();
+        //the items by channel id, null until the submenu has been opened
+        private HashMap<String, JMenuItem> items;
+
+        private ChannelMenu(String channelType){
+            menu = new JMenu(channelType);
+            menu.addMenuListener(this);
+        }
+
+        /**
+         * Method that will give the submenu the channels of its type
+         * @param channelList the channels in api order
+         */
+        private void setChannels(List<ChannelInfo> channelList){
+            this.channelList = channelList;
+            if (items != null) {
+                applyChannels();
+            }
+        }
+
+        @Override
+        public void menuSelected(MenuEvent e) {
+            //called before the popup is shown, so the items are there when it opens
+            if (items == null) {
+                items = new HashMap<>();
+                applyChannels();
+            }
+        }
+
+        @Override
+        public void menuDeselected(MenuEvent e) {
+        }
+
+        @Override
+        public void menuCanceled(MenuEvent e) {
+        }
+
+        /**
+         * Method that will make the items of the submenu match the list of channels
+         */
+        private void applyChannels(){
+            HashMap<String, JMenuItem> kept = new HashMap<>();
+            for (int i = 0; i < channelList.size(); i++) {
+                ChannelInfo channel = channelList.get(i);
+                JMenuItem item = items.remove(channel.getChannelId());
+                if (item == null) {
+                    item = new JMenuItem();
+                    describe(item, channel);
+                    item.addActionListener(channelListener);
+                    //the item is armed when it is hovered over
+                    item.addChangeListener(hoverListener);
+                    menu.insert(item, i);
+                } else {
+                    if (item.getClientProperty(ChannelInfo.class) != channel) {
+                        describe(item, channel);
+                    }
+                    if (menu.getMenuComponent(i) != item) {
+                        menu.remove(item);
+                        menu.insert(item, i);
+                    }
+                }
+                kept.put(channel.getChannelId(), item);
+            }
+            //the channels that are left over are no longer of this type
+            items.values().forEach(menu::remove);
+            items = kept;
+        }
     }
 }
@@ -0,0 +1,101 @@
+package se.umu.cs.appjava.view;
+
+import se.umu.cs.appjava.model.NowAndNext;
+import se.umu.cs.appjava.model.Program;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that will display a card on the home page with what is on every channel right now and what comes next.
+ * Double clicking a channel in the card opens the channel the same way as choosing it in the menu does.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class NowAndNextView extends JPanel {
+    private final DefaultTableModel model;
+    private final JTable table;
+    private ActionListener channelListener;
+    private List<NowAndNext> nowAndNext;
+
+    public NowAndNextView(){
+        this.nowAndNext = new ArrayList<>();
+        setLayout(new BorderLayout());
+        setBorder(BorderFactory.createEmptyBorder(10, 40, 10, 40));
+
+        JLabel header = new JLabel("Just nu");
+        header.setFont(new Font("Microsoft JhengHei UI Light", Font.BOLD, 18));
+        header.setBorder(BorderFactory.createEmptyBorder(0, 0, 5, 0));
+        add(header, BorderLayout.NORTH);
+
+        String[] columnNames = {"Kanal", "Nu", "Slutar", "Sedan"};
+        model = new DefaultTableModel(columnNames, 0){
+            //we need to override this method to make the table not editable
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        table = new JTable(model);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.setRowHeight(25);
+        table.addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                if (e.getClickCount() == 2 && !e.isConsumed()) {
+                    e.consume();
+                    int row = table.rowAtPoint(e.getPoint());
+                    if (row >= 0 && channelListener != null) {
+                        channelListener.actionPerformed(new ActionEvent(NowAndNextView.this,
+                                ActionEvent.ACTION_PERFORMED, "is channel" + nowAndNext.get(row).getChannelId()));
+                    }
+                }
+            }
+        });
+        add(new JScrollPane(table), BorderLayout.CENTER);
+    }
+
+    /**
+     * Method for setting the listener that is told when a channel is double clicked, with the same action command
+     * as the channel in the menu
+     * @param channelListener the action listener
+     */
+    public void setChannelListener(ActionListener channelListener){
+        this.channelListener = channelListener;
+    }
+
+    /**
+     * Method that will show a new list in the card, must be called on the EDT
+     * @param nowAndNext one entry per channel
+     */
+    public void update(List<NowAndNext> nowAndNext){
+        this.nowAndNext = nowAndNext;
+        //keep the selected channel selected when the list is replaced
+        String selectedName = null;
+        int selectedRow = table.getSelectedRow();
+        if (selectedRow >= 0 && selectedRow < model.getRowCount()) {
+            selectedName = (String) model.getValueAt(selectedRow, 0);
+        }
+        model.setRowCount(0);
+        for (int i = 0; i < nowAndNext.size(); i++) {
+            NowAndNext entry = nowAndNext.get(i);
+            Program current = entry.getCurrent();
+            Program next = entry.getNext();
+            model.addRow(new Object[]{entry.getChannelName(),
+                    current == null ? "-" : current.getProgramName(),
+                    current == null ? "-" : current.getEndTime(),
+                    next == null ? "-" : next.getProgramName()});
+            if (entry.getChannelName() != null && entry.getChannelName().equals(selectedName)) {
+                table.setRowSelectionInterval(i, i);
+            }
+        }
+    }
+}
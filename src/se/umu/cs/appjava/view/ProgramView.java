@@ -1,11 +1,10 @@
 package se.umu.cs.appjava.view;
 
+import se.umu.cs.appjava.model.ImageLoader;
 import se.umu.cs.appjava.model.Program;
 
 import javax.swing.*;
 import java.awt.*;
-import java.net.MalformedURLException;
-import java.net.URL;
 /**
  * Class that will display a detailed view of a program as a JDialog.
  * The view will display the name, start and end time, description and image of the program.
@@ -42,25 +41,10 @@ public class ProgramView extends JDialog {
         JLabel endTimeLabel = new JLabel("Slut: " + program.getEndTime());
         endTimeLabel.setFont(new Font("Microsoft JhengHei UI Light", Font.BOLD, 12));
         JTextArea descriptionArea = new JTextArea(program.getDescription());
-        //format the image
-        String  image = program.getImage();
-        URL url = null;
-        try {
-            url = new URL(image);
-        } catch (MalformedURLException e) {
-            //handle exception better...
-            System.out.println("Error: creating image url for channel");
-        }
-        ImageIcon imageicon;
-        if (url != null){
-            imageicon = new ImageIcon(url);
-        } else {
-            imageicon = new ImageIcon();
-        }
-        Image image1 = imageicon.getImage();
-        Image scaledImage = image1.getScaledInstance(100, 100, Image.SCALE_SMOOTH);
-        ImageIcon newImageIcon = new ImageIcon(scaledImage);
-        JLabel imageHolder = new JLabel(newImageIcon);
+        //show an empty square until the image has been loaded, the dialog is modal but the EDT keeps pumping events
+        JLabel imageHolder = new JLabel(ImageLoader.placeholder(100));
+        ImageLoader.getInstance().loadInto(program.getImage(), 100,
+                image -> imageHolder.setIcon(new ImageIcon(image)));
 
         descriptionArea.setWrapStyleWord(true);
         descriptionArea.setLineWrap(true);
@@ -0,0 +1,149 @@
+package se.umu.cs.appjava.view;
+
+import se.umu.cs.appjava.model.Program;
+import se.umu.cs.appjava.model.ScheduleDiff;
+import se.umu.cs.appjava.model.ScheduleIndex;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that is the table model of a schedule. The cells are read straight from the index of the schedule snapshot
+ * of the channel, which never changes and already keeps the start and end times in primitive arrays, so a view holds
+ * no copy of the schedule at all. Only while a schedule is streamed in before its first snapshot are the rows kept in
+ * a list of their own, which is dropped as soon as the snapshot is shown. The times are only formatted when a cell is
+ * drawn, and the latest formatted times are kept in a small cache, as the end of one program usually is the start of
+ * the next. Every change fires an event for only the rows it touched.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ScheduleTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = {"Program", "Starttid", "Sluttid"};
+    //the number of formatted times to keep, the least recently used is forgotten first
+    private static final int MAX_FORMATTED_TIMES = 256;
+    //the schedule the rows are read from, empty while rows are streamed in
+    private ScheduleIndex index = ScheduleIndex.EMPTY;
+    //the rows streamed in before the first snapshot, null when the rows are read from the index
+    private ArrayList<Program> streamed;
+    private final LinkedHashMap<Long, String> formattedTimes = new LinkedHashMap<>(16, 0.75f, true){
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > MAX_FORMATTED_TIMES;
+        }
+    };
+    private ZoneId formattedZone;
+
+    @Override
+    public int getRowCount() {
+        return streamed != null ? streamed.size() : index.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) {
+            String title = getProgram(row).getProgramName();
+            return title == null ? "" : title;
+        }
+        if (streamed != null) {
+            Program program = streamed.get(row);
+            return formatTime(column == 1 ? program.getStartEpochSecond() : program.getEndEpochSecond());
+        }
+        return formatTime(column == 1 ? index.getStart(row) : index.getEnd(row));
+    }
+
+    /**
+     * Method that will return the program of a row
+     * @param row the row
+     * @return the program
+     */
+    public Program getProgram(int row){
+        return streamed != null ? streamed.get(row) : index.get(row);
+    }
+
+    /**
+     * Method that will return the programs of all rows
+     * @return the programs in row order, a list that does not change when the table does
+     */
+    public List<Program> snapshot(){
+        return streamed != null ? List.copyOf(streamed) : index.getPrograms();
+    }
+
+    /**
+     * Method that will add programs as the last rows while a schedule is streamed in
+     * @param programs the programs in order
+     */
+    public void append(List<Program> programs){
+        if (programs.isEmpty()) {
+            return;
+        }
+        if (streamed == null) {
+            streamed = new ArrayList<>(index.getPrograms());
+            index = ScheduleIndex.EMPTY;
+        }
+        int first = streamed.size();
+        streamed.addAll(programs);
+        fireTableRowsInserted(first, streamed.size() - 1);
+    }
+
+    /**
+     * Method that will show a new snapshot of the schedule. The rows are read from the new index right away, and one
+     * event is fired per change in the order of the changes, so the selection follows the rows it was on.
+     * @param index the index of the new schedule
+     * @param changes the changes that turn the rows shown now into the programs of the index
+     */
+    public void apply(ScheduleIndex index, ScheduleDiff changes){
+        this.index = index;
+        streamed = null;
+        for (ScheduleDiff.Change change : changes.getChanges()) {
+            int row = change.getRow();
+            switch (change.getKind()) {
+                case INSERT -> fireTableRowsInserted(row, row);
+                case DELETE -> fireTableRowsDeleted(row, row);
+                case UPDATE -> fireTableRowsUpdated(row, row);
+            }
+        }
+    }
+
+    /**
+     * Method that will format a time in the display zone, using the cache when the time has been formatted before
+     * @param epochSecond the time in seconds since the epoch
+     * @return the formatted time
+     */
+    private String formatTime(long epochSecond){
+        ZoneId zone = Program.getDisplayZone();
+        if (!zone.equals(formattedZone)) {
+            formattedTimes.clear();
+            formattedZone = zone;
+        }
+        String formatted = formattedTimes.get(epochSecond);
+        if (formatted == null) {
+            DateTimeFormatter formatter = Program.formatterFor(zone);
+            formatted = formatter.format(Instant.ofEpochSecond(epochSecond));
+            formattedTimes.put(epochSecond, formatted);
+        }
+        return formatted;
+    }
+}
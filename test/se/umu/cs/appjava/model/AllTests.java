@@ -0,0 +1,25 @@
+package se.umu.cs.appjava.model;
+
+/**
+ * Class that runs all tests of the model. A test that fails stops the run with an AssertionError.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class AllTests {
+
+    public static void main(String[] args) throws Exception {
+        NowAndNextRefresherTest.main(args);
+        ScheduleIndexTest.main(args);
+        ScheduleDiffTest.main(args);
+        DayPageCacheTest.main(args);
+        ChannelInfoSlideTest.main(args);
+        ConcurrencyLimiterTest.main(args);
+        CircuitBreakerTest.main(args);
+        ChannelDiffTest.main(args);
+        FetchSchedulerTest.main(args);
+        ScheduleBuilderTest.main(args);
+        ScheduleArchiveTest.main(args);
+    }
+}
@@ -0,0 +1,164 @@
+package se.umu.cs.appjava.model;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+
+/**
+ * Class that measures how many bytes are allocated per program when a schedule page is parsed. The streaming parser
+ * of the application is compared with a handler written the way the parser was before, which made a new SAX parser
+ * for every page, routed the elements with flags and made a new string of every chunk of text. Both read the same
+ * page from memory so only the parsing is measured. It is not one of the tests and is run on its own:
+ * java -cp out:out-test se.umu.cs.appjava.model.ApiParserBenchmark [pages]
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ApiParserBenchmark {
+    private static final int EPISODES_PER_PAGE = 40;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        byte[] page = schedule(EPISODES_PER_PAGE).getBytes(StandardCharsets.UTF_8);
+        ApiParser parser;
+        //parse once through the fixture server so the parser reads schedules, then only from memory
+        try (FixtureServer server = new FixtureServer()) {
+            server.serve("/api/v2/scheduledepisodes/", 200, new String(page, StandardCharsets.UTF_8));
+            parser = new ApiParser(server.transport());
+            parser.parse("https://api.sr.se/api/v2/scheduledepisodes/?channelid=1&pagination=false");
+        }
+        Check.equal(EPISODES_PER_PAGE, parser.getPrograms().size(), "programs on the page");
+        SaxBaseline baseline = new SaxBaseline();
+        baseline.parse(page);
+        Check.equal(EPISODES_PER_PAGE, baseline.programs.size(), "programs on the page with the old handler");
+
+        //warm up both before anything is measured
+        for (int i = 0; i < pages; i++) {
+            parser.parseDocument(new ByteArrayInputStream(page));
+            baseline.parse(page);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < pages; i++) {
+            baseline.parse(page);
+        }
+        long sax = (allocatedBytes() - before) / ((long) pages * EPISODES_PER_PAGE);
+        before = allocatedBytes();
+        for (int i = 0; i < pages; i++) {
+            parser.parseDocument(new ByteArrayInputStream(page));
+        }
+        long stax = (allocatedBytes() - before) / ((long) pages * EPISODES_PER_PAGE);
+        System.out.println("ApiParserBenchmark: " + pages + " pages of " + EPISODES_PER_PAGE + " episodes");
+        System.out.println("  SAX handler with flags: " + sax + " B allocated per program");
+        System.out.println("  streaming parser:       " + stax + " B allocated per program");
+    }
+
+    /**
+     * Method that will return the number of bytes the current thread has allocated so far
+     */
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Method that will build a schedule page the way the api writes it, with the program and channel of every episode
+     * @param episodes the number of episodes on the page
+     * @return the page
+     */
+    private static String schedule(int episodes){
+        StringBuilder page = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sr>"
+                + "<copyright>Copyright Sveriges Radio</copyright><schedule>");
+        long start = Instant.parse("2024-01-05T00:00:00Z").getEpochSecond();
+        for (int i = 0; i < episodes; i++) {
+            long end = start + 1800;
+            page.append("<scheduledepisode><episodeid>").append(2000000 + i).append("</episodeid>")
+                    .append("<title>Program nummer ").append(i).append(" &amp; gäster</title>")
+                    .append("<description>En beskrivning av avsnitt ").append(i)
+                    .append(" som är ungefär så lång som de brukar vara i tablån.</description>")
+                    .append("<starttimeutc>").append(Instant.ofEpochSecond(start)).append("</starttimeutc>")
+                    .append("<endtimeutc>").append(Instant.ofEpochSecond(end)).append("</endtimeutc>")
+                    .append("<program id=\"").append(i).append("\" name=\"Program ").append(i).append("\" />")
+                    .append("<channel id=\"132\" name=\"P1\" />")
+                    .append("<imageurl>https://static-cdn.sr.se/images/").append(i).append(".jpg</imageurl>")
+                    .append("</scheduledepisode>");
+            start = end;
+        }
+        return page.append("</schedule></sr>").toString();
+    }
+
+    /**
+     * Class that parses a schedule page the way the parser did before it was streaming
+     */
+    private static class SaxBaseline extends DefaultHandler {
+        private final ArrayList<Program> programs = new ArrayList<>();
+        private String episodeId;
+        private String title;
+        private String description;
+        private String startTime;
+        private String endTime;
+        private String imageURL;
+        private boolean isEpisodeId;
+        private boolean isTitle;
+        private boolean isDescription;
+        private boolean isStartTime;
+        private boolean isEndTime;
+        private boolean isImage;
+
+        private void parse(byte[] page) throws Exception {
+            programs.clear();
+            SAXParserFactory.newInstance().newSAXParser().parse(new ByteArrayInputStream(page), this);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (qName) {
+                case "episodeid" -> isEpisodeId = true;
+                case "title" -> isTitle = true;
+                case "description" -> isDescription = true;
+                case "starttimeutc" -> isStartTime = true;
+                case "endtimeutc" -> isEndTime = true;
+                case "imageurl" -> isImage = true;
+                default -> { }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (isEpisodeId) {
+                episodeId = new String(ch, start, length);
+            } else if (isTitle) {
+                title = new String(ch, start, length);
+            } else if (isDescription) {
+                description = new String(ch, start, length);
+            } else if (isStartTime) {
+                startTime = new String(ch, start, length);
+            } else if (isEndTime) {
+                endTime = new String(ch, start, length);
+            } else if (isImage) {
+                imageURL = new String(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (qName) {
+                case "scheduledepisode" ->
+                        programs.add(new Program(title, episodeId, description, startTime, endTime, imageURL));
+                case "episodeid" -> isEpisodeId = false;
+                case "title" -> isTitle = false;
+                case "description" -> isDescription = false;
+                case "starttimeutc" -> isStartTime = false;
+                case "endtimeutc" -> isEndTime = false;
+                case "imageurl" -> isImage = false;
+                default -> { }
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package se.umu.cs.appjava.model;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Class that tests that the diff of two channel lists finds the added, removed and changed channels, and that a new
+ * registry keeps the instances of the channels that did not change.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ChannelDiffTest {
+
+    public static void main(String[] args){
+        findsAddedRemovedAndChanged();
+        joinedDiffsSkipTheMiddle();
+        System.out.println("ChannelDiffTest: ok");
+    }
+
+    /**
+     * Method that will compare two registries where one channel is new, one is gone, one has a new name and one is
+     * the same
+     */
+    private static void findsAddedRemovedAndChanged(){
+        ChannelInfo p1 = new ChannelInfo("P1", "132", null, "Rikskanal", null);
+        ChannelInfo p2 = new ChannelInfo("P2", "163", null, "Rikskanal", null);
+        ChannelInfo p3 = new ChannelInfo("P3", "164", null, "Rikskanal", null);
+        p2.setSchedule(List.of(Check.program("A", 0, 10)));
+        ChannelRegistry before = new ChannelRegistry(List.of(p1, p2, p3));
+
+        ChannelInfo sameP1 = new ChannelInfo("P1", "132", null, "Rikskanal", null);
+        ChannelInfo renamedP2 = new ChannelInfo("P2 Musik", "163", null, "Lokal kanal", null);
+        ChannelInfo p4 = new ChannelInfo("P4", "212", null, "Lokal kanal", null);
+        ChannelRegistry after = new ChannelRegistry(List.of(sameP1, renamedP2, p4)).reuse(before);
+
+        Check.equal(p1, after.getById("132"), "an unchanged channel keeps its instance");
+        Check.equal(renamedP2, after.getById("163"), "a changed channel is the new instance");
+        Check.equal(1, renamedP2.getSchedule().size(), "a changed channel takes over the schedule");
+
+        ChannelDiff diff = ChannelDiff.between(before, after);
+        Check.equal(List.of(p4), diff.getAdded(), "added");
+        Check.equal(List.of(p3), diff.getRemoved(), "removed");
+        Check.equal(List.of(renamedP2), diff.getChanged(), "changed");
+        Check.equal(Set.of("Rikskanal", "Lokal kanal"), diff.getChannelTypes(), "types");
+        Check.isTrue(!diff.isEmpty(), "the diff has changes");
+        Check.isTrue(ChannelDiff.between(after, after).isEmpty(), "no changes to itself");
+    }
+
+    /**
+     * Method that will join two diffs where the second one undoes the first
+     */
+    private static void joinedDiffsSkipTheMiddle(){
+        ChannelInfo p1 = new ChannelInfo("P1", "132", null, "Rikskanal", null);
+        ChannelInfo p2 = new ChannelInfo("P2", "163", null, "Rikskanal", null);
+        ChannelRegistry first = new ChannelRegistry(List.of(p1));
+        ChannelRegistry second = new ChannelRegistry(List.of(p1, p2));
+        ChannelRegistry third = new ChannelRegistry(List.of(p1));
+        ChannelDiff joined = ChannelDiff.between(first, second).then(ChannelDiff.between(second, third));
+        Check.isTrue(joined.isEmpty(), "a channel added and removed again is no change");
+
+        ChannelRegistry fourth = new ChannelRegistry(List.of(p2));
+        joined = ChannelDiff.between(first, second).then(ChannelDiff.between(second, fourth));
+        Check.equal(List.of(p2), joined.getAdded(), "added over both");
+        Check.equal(List.of(p1), joined.getRemoved(), "removed over both");
+    }
+}
@@ -0,0 +1,56 @@
+package se.umu.cs.appjava.model;
+
+import java.util.List;
+
+/**
+ * Class that tests that sliding the schedule of a channel drops, keeps and replaces the right programs, and that the
+ * changes it gives turn the old rows into the new schedule.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ChannelInfoSlideTest {
+
+    public static void main(String[] args){
+        slideDropsKeepsAndReplaces();
+        slideOfAnEmptyScheduleAddsTheTail();
+        System.out.println("ChannelInfoSlideTest: ok");
+    }
+
+    /**
+     * Method that will slide a schedule past its first program and fetch its end again
+     */
+    private static void slideDropsKeepsAndReplaces(){
+        ChannelInfo channel = new ChannelInfo("P1", "132", null, "Rikskanal", null);
+        List<Program> before = List.of(Check.program("A", 0, 10), Check.program("B", 10, 20),
+                Check.program("C", 20, 30), Check.program("D", 30, 40));
+        channel.setSchedule(before);
+        long version = channel.getScheduleIndex().getVersion();
+
+        List<Program> tail = List.of(Check.program("C", 20, 30), Check.program("E", 30, 45),
+                Check.program("F", 45, 50));
+        ChannelInfo.Slide slide = channel.slide(0, tail, 10, 50);
+
+        List<Program> after = List.of(Check.program("B", 10, 20), Check.program("C", 20, 30),
+                Check.program("E", 30, 45), Check.program("F", 45, 50));
+        Check.equal(Check.describe(after), Check.describe(channel.getSchedule()), "schedule after the slide");
+        Check.equal(Check.describe(after), Check.describe(Check.apply(before, slide.getChanges())),
+                "rows after the changes");
+        Check.equal(channel.getScheduleIndex(), slide.getIndex(), "the slide gives the published index");
+        Check.isTrue(slide.getIndex().getVersion() > version, "the slide gives a new version");
+        Check.equal(50L, channel.getLoadedUntil(), "loaded until the end of the range");
+        Check.equal(before.get(1), channel.getSchedule().get(0), "a kept program keeps its instance");
+    }
+
+    /**
+     * Method that will slide a channel that has no schedule yet
+     */
+    private static void slideOfAnEmptyScheduleAddsTheTail(){
+        ChannelInfo channel = new ChannelInfo("P2", "163", null, "Rikskanal", null);
+        List<Program> tail = List.of(Check.program("A", 10, 20), Check.program("B", 20, 30));
+        ChannelInfo.Slide slide = channel.slide(0, tail, 0, 30);
+        Check.equal(2, slide.getChanges().getChanges().size(), "two inserts");
+        Check.equal(Check.describe(tail), Check.describe(channel.getSchedule()), "schedule after the slide");
+    }
+}
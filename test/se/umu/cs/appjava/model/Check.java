@@ -0,0 +1,86 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Class with the checks the tests are written with, so the tests can be run with nothing but the jdk. A check that
+ * fails throws an AssertionError that tells what was expected and what was found.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+final class Check {
+
+    private Check(){
+    }
+
+    /**
+     * Method that will check that two values are equal
+     * @param expected the value that should have been found
+     * @param actual the value that was found
+     * @param what what was checked, used in the message
+     */
+    static void equal(Object expected, Object actual, String what){
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(what + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    /**
+     * Method that will check that a condition holds
+     * @param condition the condition
+     * @param what what was checked, used in the message
+     */
+    static void isTrue(boolean condition, String what){
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    /**
+     * Method that will make a program, the episode id is the title in lower case
+     * @param title the title of the program
+     * @param start the start in epoch seconds
+     * @param end the end in epoch seconds
+     * @return the program
+     */
+    static Program program(String title, long start, long end){
+        return new Program(title, title.toLowerCase(), null, start, end, null);
+    }
+
+    /**
+     * Method that will apply the changes of a diff to the rows they were made for, the way the table does
+     * @param shown the rows before the changes
+     * @param diff the changes
+     * @return the rows after the changes
+     */
+    static List<Program> apply(List<Program> shown, ScheduleDiff diff){
+        ArrayList<Program> rows = new ArrayList<>(shown);
+        for (ScheduleDiff.Change change : diff.getChanges()) {
+            switch (change.getKind()) {
+                case INSERT -> rows.add(change.getRow(), change.getProgram());
+                case DELETE -> rows.remove(change.getRow());
+                case UPDATE -> rows.set(change.getRow(), change.getProgram());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Method that will describe programs by everything a row shows, to compare schedules that are made of different
+     * instances
+     * @param programs the programs
+     * @return one line per program
+     */
+    static List<String> describe(List<Program> programs){
+        ArrayList<String> lines = new ArrayList<>(programs.size());
+        for (Program program : programs) {
+            lines.add(program.getProgramName() + "|" + program.getEpisodeId() + "|"
+                    + program.getStartEpochSecond() + "|" + program.getEndEpochSecond());
+        }
+        return lines;
+    }
+}
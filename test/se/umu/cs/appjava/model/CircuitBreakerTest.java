@@ -0,0 +1,74 @@
+package se.umu.cs.appjava.model;
+
+/**
+ * Class that tests that the breaker opens after failures in a row, lets one request test the server when the time is
+ * up, and waits longer each time the test fails.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class CircuitBreakerTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        opensAfterFailuresInRow();
+        aSuccessResetsTheFailures();
+        halfOpenLetsOneRequestTest();
+        System.out.println("CircuitBreakerTest: ok");
+    }
+
+    /**
+     * Method that will check that the breaker stays closed until the threshold and then refuses requests
+     */
+    private static void opensAfterFailuresInRow(){
+        CircuitBreaker breaker = new CircuitBreaker(3, 10_000, 20_000);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        Check.equal(CircuitBreaker.State.CLOSED, breaker.getState(), "state under the threshold");
+        Check.isTrue(breaker.allowRequest(), "a closed breaker lets requests through");
+        breaker.recordFailure();
+        Check.equal(CircuitBreaker.State.OPEN, breaker.getState(), "state at the threshold");
+        Check.equal(1L, breaker.getTripCount(), "trips");
+        Check.isTrue(!breaker.allowRequest(), "an open breaker refuses requests");
+        Check.equal(1L, breaker.getRejectedCount(), "rejected");
+    }
+
+    /**
+     * Method that will check that only failures in a row count
+     */
+    private static void aSuccessResetsTheFailures(){
+        CircuitBreaker breaker = new CircuitBreaker(3, 10_000, 20_000);
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        Check.equal(CircuitBreaker.State.CLOSED, breaker.getState(), "state after a success between failures");
+    }
+
+    /**
+     * Method that will check the half open state: one test request at a time, a failed test opens the breaker for
+     * twice as long, a given up test lets another one through and a good test closes the breaker
+     */
+    private static void halfOpenLetsOneRequestTest() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, 1000);
+        breaker.recordFailure();
+        Thread.sleep(70);
+        Check.equal(CircuitBreaker.State.HALF_OPEN, breaker.getState(), "state when the time is up");
+        Check.isTrue(breaker.allowRequest(), "the test request is let through");
+        Check.isTrue(!breaker.allowRequest(), "only one test request at a time");
+
+        breaker.recordFailure();
+        Check.equal(2L, breaker.getTripCount(), "trips after a failed test");
+        Thread.sleep(70);
+        Check.isTrue(!breaker.allowRequest(), "the breaker stays open twice as long");
+        Thread.sleep(60);
+        Check.isTrue(breaker.allowRequest(), "a new test request when the longer time is up");
+
+        breaker.recordCancelled();
+        Check.isTrue(breaker.allowRequest(), "another test request after one was given up");
+        breaker.recordSuccess();
+        Check.equal(CircuitBreaker.State.CLOSED, breaker.getState(), "state after a good test");
+        Check.isTrue(breaker.allowRequest() && breaker.allowRequest(), "a closed breaker lets all requests through");
+    }
+}
@@ -0,0 +1,116 @@
+package se.umu.cs.appjava.model;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class that tests how the limiter raises and lowers its limit and that it holds back requests over the limit.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ConcurrencyLimiterTest {
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    public static void main(String[] args) throws Exception {
+        goodAnswersRaiseTheLimit();
+        badAnswersHalveTheLimitOncePerRoundTrip();
+        theLimitStaysWithinItsBounds();
+        requestsOverTheLimitWait();
+        System.out.println("ConcurrencyLimiterTest: ok");
+    }
+
+    /**
+     * Method that will check that an answer in good time raises the limit by one over the limit
+     */
+    private static void goodAnswersRaiseTheLimit() throws InterruptedIOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 16);
+        limiter.acquire();
+        Check.equal(1, limiter.getInFlight(), "in flight after acquire");
+        limiter.release(ONE_SECOND, false);
+        Check.equal(0, limiter.getInFlight(), "in flight after release");
+        Check.equal(4.25, limiter.getLimit(), "limit after a good answer");
+    }
+
+    /**
+     * Method that will check that a failure and a slow answer halve the limit, but only once per round trip
+     */
+    private static void badAnswersHalveTheLimitOncePerRoundTrip() throws InterruptedIOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 16);
+        limiter.acquire();
+        limiter.release(ONE_SECOND, false);
+        double limit = limiter.getLimit();
+        limiter.acquire();
+        limiter.acquire();
+        limiter.release(ONE_SECOND, true);
+        Check.equal(limit / 2, limiter.getLimit(), "limit after a failure");
+        limiter.release(ONE_SECOND, true);
+        Check.equal(limit / 2, limiter.getLimit(), "a second failure in the same round trip");
+        Check.equal(1L, limiter.getDecreaseCount(), "decreases");
+
+        ConcurrencyLimiter slow = new ConcurrencyLimiter(8, 1, 16);
+        slow.acquire();
+        slow.release(ONE_SECOND, false);
+        limit = slow.getLimit();
+        slow.acquire();
+        slow.release(3 * ONE_SECOND, false);
+        Check.equal(limit / 2, slow.getLimit(), "limit after a slow answer");
+    }
+
+    /**
+     * Method that will check that the limit never leaves its bounds
+     */
+    private static void theLimitStaysWithinItsBounds() throws InterruptedIOException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 2);
+        limiter.acquire();
+        limiter.release(ONE_SECOND, true);
+        Check.equal(1.0, limiter.getLimit(), "limit at the bottom");
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+            limiter.release(ONE_SECOND, false);
+        }
+        Check.equal(2.0, limiter.getLimit(), "limit at the top");
+        Check.equal(16.0, new ConcurrencyLimiter(100, 1, 16).getLimit(), "initial limit over the top");
+    }
+
+    /**
+     * Method that will check that a request over the limit waits until another one is done or given up, and that a
+     * waiting thread can be interrupted
+     */
+    private static void requestsOverTheLimitWait() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.acquire();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.set(true);
+            } catch (InterruptedIOException e) {
+                //the check below fails
+            }
+        });
+        waiter.start();
+        waiter.join(100);
+        Check.isTrue(!acquired.get(), "a request over the limit waits");
+        limiter.cancel();
+        waiter.join(1000);
+        Check.isTrue(acquired.get(), "the request is sent when another is given up");
+
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread blocked = new Thread(() -> {
+            try {
+                limiter.acquire();
+            } catch (InterruptedIOException e) {
+                interrupted.set(true);
+            }
+        });
+        blocked.start();
+        blocked.join(100);
+        blocked.interrupt();
+        blocked.join(1000);
+        Check.isTrue(interrupted.get(), "a waiting request can be interrupted");
+        Check.equal(1, limiter.getInFlight(), "the interrupted request is not counted");
+    }
+}
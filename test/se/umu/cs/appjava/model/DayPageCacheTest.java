@@ -0,0 +1,67 @@
+package se.umu.cs.appjava.model;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that tests how long the pages of the cache can be trusted and that pages that are too old are not given out.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class DayPageCacheTest {
+
+    public static void main(String[] args){
+        timeToLiveFollowsTheDay();
+        timeToLiveFollowsTheDayOfTheFetch();
+        oldPagesAreNotGivenOut();
+        System.out.println("DayPageCacheTest: ok");
+    }
+
+    /**
+     * Method that will check the time to live of pages fetched now
+     */
+    private static void timeToLiveFollowsTheDay(){
+        LocalDate today = LocalDate.now();
+        long now = System.currentTimeMillis();
+        Check.equal(TimeUnit.HOURS.toMillis(24), DayPageCache.timeToLive(today.minusDays(1), now), "a past day");
+        Check.equal(TimeUnit.MINUTES.toMillis(10), DayPageCache.timeToLive(today, now), "today");
+        Check.equal(TimeUnit.MINUTES.toMillis(30), DayPageCache.timeToLive(today.plusDays(1), now), "tomorrow");
+        Check.equal(TimeUnit.HOURS.toMillis(2), DayPageCache.timeToLive(today.plusDays(3), now), "a later day");
+    }
+
+    /**
+     * Method that will check that a page fetched before its day had passed is trusted as long as it was then
+     */
+    private static void timeToLiveFollowsTheDayOfTheFetch(){
+        LocalDate today = LocalDate.now();
+        long twoDaysAgo = today.minusDays(2).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Check.equal(TimeUnit.MINUTES.toMillis(30), DayPageCache.timeToLive(today.minusDays(1), twoDaysAgo),
+                "a past day fetched the day before it");
+        long yesterday = today.minusDays(1).atTime(12, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Check.equal(TimeUnit.MINUTES.toMillis(10), DayPageCache.timeToLive(today, yesterday),
+                "today fetched yesterday");
+    }
+
+    /**
+     * Method that will check that a page older than its time to live is counted as expired
+     */
+    private static void oldPagesAreNotGivenOut(){
+        DayPageCache cache = new DayPageCache(4);
+        LocalDate today = LocalDate.now();
+        List<Program> page = List.of(Check.program("A", 0, 10));
+        long now = System.currentTimeMillis();
+
+        Check.equal(null, cache.get("132", today), "a missing page");
+        cache.put("132", today, page, now - TimeUnit.MINUTES.toMillis(11));
+        Check.equal(null, cache.get("132", today), "a page that is too old");
+        Check.equal(1L, cache.getExpiredCount(), "expired");
+        cache.put("132", today, page, now);
+        Check.equal(page, cache.get("132", today), "a fresh page");
+        Check.equal(1L, cache.getHitCount(), "hits");
+        Check.equal(2L, cache.getMissCount(), "misses");
+    }
+}
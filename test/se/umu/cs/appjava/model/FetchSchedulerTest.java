@@ -0,0 +1,92 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that tests the order the fetch scheduler starts fetches in, that a channel has one fetch at a time, and that
+ * a fetch dropped when the user leaves its channel still lets those waiting for it know. The fetches are started on an
+ * executor that only collects them, so the test decides when they run.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class FetchSchedulerTest {
+
+    public static void main(String[] args){
+        startsTheMostUrgentFirst();
+        oneFetchPerChannel();
+        leavingAChannelStillRunsTheCallbacks();
+        System.out.println("FetchSchedulerTest: ok");
+    }
+
+    /**
+     * Method that will check that a waiting fetch of a more urgent lane starts before one that was queued earlier
+     */
+    private static void startsTheMostUrgentFirst(){
+        ArrayList<Runnable> started = new ArrayList<>();
+        FetchScheduler scheduler = new FetchScheduler(started::add, 1);
+        ArrayList<String> log = new ArrayList<>();
+        scheduler.submit("1", FetchScheduler.Priority.REFRESH, () -> log.add("1"));
+        scheduler.submit("2", FetchScheduler.Priority.PREFETCH, () -> log.add("2"));
+        scheduler.submit("3", FetchScheduler.Priority.VISIBLE, () -> log.add("3"));
+        Check.equal(1, scheduler.getQueueDepth(FetchScheduler.Priority.PREFETCH), "waiting prefetches");
+        runAll(started);
+        Check.equal(List.of("1", "3", "2"), log, "order of the fetches");
+        Check.equal(0, scheduler.getRunning(), "running after all are done");
+    }
+
+    /**
+     * Method that will check that asking again for a channel merges into the fetch on its way
+     */
+    private static void oneFetchPerChannel(){
+        ArrayList<Runnable> started = new ArrayList<>();
+        FetchScheduler scheduler = new FetchScheduler(started::add, 1);
+        AtomicInteger runs = new AtomicInteger();
+        Check.isTrue(scheduler.submit("1", FetchScheduler.Priority.REFRESH, runs::incrementAndGet), "first is queued");
+        Check.isTrue(!scheduler.submit("1", FetchScheduler.Priority.USER, runs::incrementAndGet), "second is merged");
+        runAll(started);
+        Check.equal(1, runs.get(), "fetches run");
+        Check.isTrue(!scheduler.isInFlight("1"), "nothing on its way after the fetch");
+    }
+
+    /**
+     * Method that will check that a visible fetch dropped before it starts runs its callbacks and never its task,
+     * while a fetch that already runs is kept, and that a new fetch can be queued for the channel afterwards
+     */
+    private static void leavingAChannelStillRunsTheCallbacks(){
+        ArrayList<Runnable> started = new ArrayList<>();
+        FetchScheduler scheduler = new FetchScheduler(started::add, 1);
+        AtomicInteger runs = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        scheduler.submit("1", FetchScheduler.Priority.VISIBLE, runs::incrementAndGet);
+        scheduler.submit("2", FetchScheduler.Priority.VISIBLE, runs::incrementAndGet);
+        //as the refresh scheduler does when it starts to track a channel whose fetch is on its way
+        scheduler.whenDone("2", done::incrementAndGet);
+        scheduler.whenDone("1", done::incrementAndGet);
+
+        scheduler.channelLeft("2");
+        Check.equal(1, done.get(), "the callback of the dropped fetch has run");
+        Check.isTrue(!scheduler.isInFlight("2"), "the dropped fetch is gone");
+        Check.equal(0, scheduler.getQueueDepth(FetchScheduler.Priority.VISIBLE), "nothing waits");
+
+        scheduler.channelLeft("1");
+        Check.isTrue(scheduler.isInFlight("1"), "a running fetch is kept");
+        runAll(started);
+        Check.equal(1, runs.get(), "only the running fetch has run");
+        Check.equal(2, done.get(), "the callback of the running fetch has run");
+        Check.isTrue(scheduler.submit("2", FetchScheduler.Priority.VISIBLE, runs::incrementAndGet),
+                "a new fetch of the channel is queued");
+    }
+
+    /**
+     * Method that will run the started fetches in order, also those that are started while they run
+     */
+    private static void runAll(List<Runnable> started){
+        while (!started.isEmpty()) {
+            started.remove(0).run();
+        }
+    }
+}
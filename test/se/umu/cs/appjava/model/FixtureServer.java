@@ -0,0 +1,140 @@
+package se.umu.cs.appjava.model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that stands in for the api in the tests. It is a small local http server that answers every link it has been
+ * given a document for, after a delay that can be set to play the round trip of a slow link. A document can be given
+ * for a path and a query, such as the schedule of one day, or for a path with any query. Every request is answered
+ * on a thread of its own so requests that are sent at the same time are also answered at the same time.
+ * The transport of the server sends the requests for the api to the server instead, so the links of the application
+ * can be used as they are.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+final class FixtureServer implements AutoCloseable {
+    private static final String API = "https://api.sr.se";
+    private final HttpServer server;
+    private final Map<String, Fixture> fixtures = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long delayMillis;
+
+    /**
+     * Constructor for the server, it starts right away on a free port
+     * @throws IOException if the server could not be started
+     */
+    FixtureServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::answer);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fixture-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    /**
+     * Method that will give the server a document to answer a link with
+     * @param path the path of the link, followed by ?query if only that query should get the document
+     * @param status the status to answer with
+     * @param body the document
+     */
+    void serve(String path, int status, String body){
+        fixtures.put(path, new Fixture(status, body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Method that will set how long the server waits before it answers
+     * @param delayMillis the delay in milliseconds
+     */
+    void setDelay(long delayMillis){
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Getter for the number of requests the server has answered
+     * @return the number of requests
+     */
+    int getRequestCount(){
+        return requests.get();
+    }
+
+    /**
+     * Method that will make a transport that sends the requests for the api to this server
+     * @return the transport
+     */
+    HttpTransport transport(){
+        String local = "http://localhost:" + server.getAddress().getPort();
+        return new HttpTransport(Duration.ofSeconds(5), Duration.ofSeconds(20)){
+            @Override
+            public HttpResponse<InputStream> send(String link, Map<String, String> headers) throws IOException {
+                return super.send(link.replace(API, local), headers);
+            }
+        };
+    }
+
+    @Override
+    public void close(){
+        server.stop(0);
+    }
+
+    /**
+     * Method that will answer a request with the document of its link, or 404 if there is none
+     * @param exchange the request
+     */
+    private void answer(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            String path = exchange.getRequestURI().getPath();
+            Fixture fixture = fixtures.get(path + "?" + exchange.getRequestURI().getRawQuery());
+            if (fixture == null) {
+                fixture = fixtures.get(path);
+            }
+            if (fixture == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=utf-8");
+            exchange.sendResponseHeaders(fixture.status, fixture.body.length == 0 ? -1 : fixture.body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(fixture.body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Class that holds the answer to a path
+     */
+    private static class Fixture {
+        private final int status;
+        private final byte[] body;
+
+        private Fixture(int status, byte[] body){
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
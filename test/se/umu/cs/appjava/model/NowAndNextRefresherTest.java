@@ -0,0 +1,219 @@
+package se.umu.cs.appjava.model;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Class that tests the "now and next" list against a fixture server that stands in for the api: that the right now
+ * document is parsed into one entry per channel, that the refresher brings the list up to date and keeps the last one
+ * when a fetch fails, and that the next fetch is planned for when the first program ends.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class NowAndNextRefresherTest {
+    private static final String PATH = "/api/v2/scheduledepisodes/rightnow";
+
+    public static void main(String[] args) throws Exception {
+        long now = Instant.now().getEpochSecond();
+        try (FixtureServer server = new FixtureServer()) {
+            server.serve(PATH, 200, rightNow(now));
+            parsesOneEntryPerChannel(server, now);
+            fetchBringsTheListUpToDate(server, now);
+            aFailedFetchTellsTheLastList(server);
+        }
+        nextFetchWhenTheFirstProgramEnds();
+        System.out.println("NowAndNextRefresherTest: ok");
+    }
+
+    /**
+     * Method that will check that the right now document gives the current and next program of every channel, and
+     * that the other episodes and the elements further down are left out
+     */
+    private static void parsesOneEntryPerChannel(FixtureServer server, long now) throws Exception {
+        ApiParser parser = new ApiParser(server.transport());
+        parser.parse(NowAndNextRefresher.LINK);
+        List<NowAndNext> list = parser.getNowAndNext();
+        Check.equal(3, list.size(), "entries");
+
+        NowAndNext p1 = list.get(0);
+        Check.equal("9132", p1.getChannelId(), "id of the first channel");
+        Check.equal("P1", p1.getChannelName(), "name of the first channel");
+        Check.equal("Morgon & nyheter", p1.getCurrent().getProgramName(), "current program");
+        Check.equal(now - 600, p1.getCurrent().getStartEpochSecond(), "start of the current program");
+        Check.equal(now + 600, p1.getCurrent().getEndEpochSecond(), "end of the current program");
+        Check.equal("Vetandets värld", p1.getNext().getProgramName(), "next program");
+
+        NowAndNext p2 = list.get(1);
+        Check.equal("Klassisk förmiddag", p2.getCurrent().getProgramName(), "the previous episode is left out");
+        Check.equal(null, p2.getNext(), "no next program");
+
+        NowAndNext p3 = list.get(2);
+        Check.equal(null, p3.getCurrent(), "no current program");
+        Check.equal("Musikguiden", p3.getNext().getProgramName(), "next program without a current one");
+        Check.equal(1, server.getRequestCount(), "requests");
+    }
+
+    /**
+     * Method that will check that a fetch tells the observer, and that a channel whose program has ended since the
+     * api answered is answered from its schedule in the guide index until the channel is removed from it
+     */
+    private static void fetchBringsTheListUpToDate(FixtureServer server, long now){
+        Program ended = Check.program("Ended", now - 1200, now - 60);
+        Program onNow = Check.program("Slut på morgonen", now - 60, now + 300);
+        Program later = Check.program("Eftermiddag", now + 300, now + 900);
+        GuideIndex.getInstance().put("9163", new ScheduleIndex(List.of(ended, onNow, later), 1));
+        server.serve(PATH, 200, rightNow(now).replace("Klassisk förmiddag", "Klassisk morgon")
+                .replace(utc(now + 1200), utc(now - 60)));
+
+        ArrayList<List<NowAndNext>> told = new ArrayList<>();
+        NowAndNextRefresher refresher = new NowAndNextRefresher(new ApiParser(server.transport()),
+                NowAndNextRefresher.LINK, 60);
+        refresher.setObserver(new ListObserver(told));
+        List<NowAndNext> list = refresher.fetch();
+
+        Check.equal(1, told.size(), "lists told");
+        Check.equal(list, told.get(0), "the fetched list is told");
+        Check.equal("Morgon & nyheter", list.get(0).getCurrent().getProgramName(), "a program that is on is kept");
+        Check.equal(onNow, list.get(1).getCurrent(), "an ended program is replaced from the guide");
+        Check.equal(later, list.get(1).getNext(), "the next program is taken from the guide");
+
+        GuideIndex.getInstance().remove("9163");
+        list = refresher.fetch();
+        Check.equal(now - 60, list.get(1).getCurrent().getEndEpochSecond(), "a removed channel is not answered");
+    }
+
+    /**
+     * Method that will check that a fetch the api refuses returns nothing and tells the last list again
+     */
+    private static void aFailedFetchTellsTheLastList(FixtureServer server){
+        ArrayList<List<NowAndNext>> told = new ArrayList<>();
+        NowAndNextRefresher refresher = new NowAndNextRefresher(new ApiParser(server.transport()),
+                NowAndNextRefresher.LINK, 60);
+        refresher.setObserver(new ListObserver(told));
+        List<NowAndNext> list = refresher.fetch();
+        Check.isTrue(list != null, "the first fetch works");
+
+        server.serve(PATH, 404, "");
+        Check.equal(null, refresher.fetch(), "a refused fetch gives no list");
+        Check.equal(2, told.size(), "lists told");
+        Check.equal(Check.describe(currents(list)), Check.describe(currents(told.get(1))),
+                "the last list is told again");
+    }
+
+    /**
+     * Method that will check that the next fetch is planned when the first program ends, but never sooner than the
+     * shortest delay or later than the interval
+     */
+    private static void nextFetchWhenTheFirstProgramEnds(){
+        long now = Instant.now().getEpochSecond();
+        NowAndNextRefresher refresher = new NowAndNextRefresher(null, NowAndNextRefresher.LINK, 60);
+        Check.equal(60L, refresher.nextDelay(null), "a failed fetch waits the interval");
+        Check.equal(60L, refresher.nextDelay(List.of(entry(now + 600))), "a long program waits the interval");
+        long delay = refresher.nextDelay(List.of(entry(now + 600), entry(now + 30)));
+        //the refresher reads the clock again, which may have passed a second since
+        Check.isTrue(delay == 35 || delay == 34, "the program that ends first decides, was " + delay);
+        Check.equal(15L, refresher.nextDelay(List.of(entry(now + 2))), "never sooner than the shortest delay");
+        Check.equal(60L, refresher.nextDelay(List.of(new NowAndNext("1", "P", null, null))),
+                "a channel with nothing on is left out");
+        Check.equal(15L, new NowAndNextRefresher(null, NowAndNextRefresher.LINK, 1).nextDelay(null),
+                "the interval is never shorter than the shortest delay");
+    }
+
+    /**
+     * Method that will make an entry whose current program ends at a time
+     */
+    private static NowAndNext entry(long end){
+        return new NowAndNext("1", "P", Check.program("On", end - 600, end), null);
+    }
+
+    /**
+     * Method that will collect the current programs of a list
+     */
+    private static List<Program> currents(List<NowAndNext> list){
+        ArrayList<Program> programs = new ArrayList<>();
+        for (NowAndNext entry : list) {
+            if (entry.getCurrent() != null) {
+                programs.add(entry.getCurrent());
+            }
+        }
+        return programs;
+    }
+
+    /**
+     * Method that will build a right now document with three channels around a time. The first channel has a current
+     * and a next episode, the second has a previous and a current one and the third only a next one.
+     * @param now the time in epoch seconds
+     * @return the document
+     */
+    private static String rightNow(long now){
+        return "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+                + "<sr><copyright>Copyright Sveriges Radio</copyright><channels>"
+                + "<channel id=\"9132\" name=\"P1\">"
+                + episode("currentscheduledepisode", "1", "Morgon &amp; nyheter", now - 600, now + 600)
+                + episode("nextscheduledepisode", "2", "Vetandets värld", now + 600, now + 1800)
+                + "</channel>"
+                + "<channel id=\"9163\" name=\"P2\">"
+                + episode("previousscheduledepisode", "3", "Natt", now - 3600, now - 1200)
+                + episode("currentscheduledepisode", "4", "Klassisk förmiddag", now - 1200, now + 1200)
+                + "</channel>"
+                + "<channel id=\"9164\" name=\"P3\">"
+                + episode("nextscheduledepisode", "5", "Musikguiden", now + 300, now + 900)
+                + "</channel>"
+                + "</channels></sr>";
+    }
+
+    /**
+     * Method that will build one episode of a channel, with a program element whose name must not be read as a field
+     */
+    private static String episode(String element, String id, String title, long start, long end){
+        return "<" + element + "><episodeid>" + id + "</episodeid><title>" + title + "</title>"
+                + "<starttimeutc>" + utc(start) + "</starttimeutc><endtimeutc>" + utc(end) + "</endtimeutc>"
+                + "<program id=\"1\"><title>Inte titeln</title></program></" + element + ">";
+    }
+
+    /**
+     * Method that will write a time the way the api does
+     */
+    private static String utc(long epochSecond){
+        return Instant.ofEpochSecond(epochSecond).toString();
+    }
+
+    /**
+     * Class that collects the lists it is told about and ignores everything else
+     */
+    private static class ListObserver implements Observer {
+        private final List<List<NowAndNext>> told;
+
+        private ListObserver(List<List<NowAndNext>> told){
+            this.told = told;
+        }
+
+        @Override
+        public void nowAndNextAvailable(List<NowAndNext> nowAndNext){
+            told.add(nowAndNext);
+        }
+
+        @Override
+        public void channelsAvailable(ChannelRegistry channels, ChannelDiff changes){
+        }
+
+        @Override
+        public void scheduleAvailable(String channelId){
+        }
+
+        @Override
+        public void scheduleChanged(String channelId, ScheduleDiff changes, ScheduleIndex index){
+        }
+
+        @Override
+        public void programsAvailable(String channelId, List<Program> programs){
+        }
+
+        @Override
+        public void errorOccurred(String errorMessage){
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package se.umu.cs.appjava.model;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Class that measures what a program costs: the bytes allocated when it is made from the times the api sends, the
+ * bytes allocated when its times are first shown and when they are shown in another zone, and the heap it holds on to
+ * once its times have been shown. The program of the application is compared with one written the way it was before,
+ * which kept the times as text and as two zoned times and formatted them with a new formatter when it was made.
+ * It is not one of the tests and is run on its own:
+ * java -cp out:out-test se.umu.cs.appjava.model.ProgramBenchmark [programs]
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ProgramBenchmark {
+    //the programs being measured, kept in fields so the compiler can not let them go early
+    private static EagerProgram[] eager;
+    private static Program[] programs;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        //the times as the parser hands them over, one string each as every page is parsed anew
+        String[] starts = new String[count];
+        String[] ends = new String[count];
+        long start = Instant.parse("2024-01-05T00:00:00Z").getEpochSecond();
+        for (int i = 0; i < count; i++) {
+            starts[i] = Instant.ofEpochSecond(start + i * 1800L).toString();
+            ends[i] = Instant.ofEpochSecond(start + i * 1800L + 1800).toString();
+        }
+        //warm up both before anything is measured
+        for (int round = 0; round < 3; round++) {
+            makeEager(starts, ends);
+            show(make(starts, ends));
+        }
+
+        long before = allocatedBytes();
+        eager = makeEager(starts, ends);
+        long eagerMade = (allocatedBytes() - before) / count;
+        before = allocatedBytes();
+        programs = make(starts, ends);
+        long made = (allocatedBytes() - before) / count;
+        before = allocatedBytes();
+        show(programs);
+        long shown = (allocatedBytes() - before) / count;
+        before = allocatedBytes();
+        show(programs);
+        long shownAgain = (allocatedBytes() - before) / count;
+        ZoneId zone = Program.getDisplayZone();
+        Program.setDisplayZone(ZoneId.of(zone.getId().equals("Asia/Tokyo") ? "Europe/Stockholm" : "Asia/Tokyo"));
+        before = allocatedBytes();
+        show(programs);
+        long otherZone = (allocatedBytes() - before) / count;
+        Program.setDisplayZone(null);
+        show(programs);
+
+        //what the programs hold on to once the text the parser handed over is gone
+        starts = null;
+        ends = null;
+        long withBoth = usedHeap();
+        eager = null;
+        long withPrograms = usedHeap();
+        programs = null;
+        long withNone = usedHeap();
+        long eagerRetained = (withBoth - withPrograms) / count;
+        long retained = (withPrograms - withNone) / count;
+
+        System.out.println("ProgramBenchmark: " + count + " programs");
+        System.out.println("  before: " + eagerMade + " B allocated when made, " + eagerRetained + " B retained");
+        System.out.println("  after:  " + made + " B allocated when made, " + shown + " B when first shown, "
+                + shownAgain + " B when shown again, " + otherZone + " B when shown in another zone, "
+                + retained + " B retained");
+    }
+
+    /**
+     * Method that will make programs the way the parser does
+     */
+    private static Program[] make(String[] starts, String[] ends){
+        Program[] programs = new Program[starts.length];
+        for (int i = 0; i < programs.length; i++) {
+            programs[i] = new Program("Program", "1", "Beskrivning", starts[i], ends[i], null);
+        }
+        return programs;
+    }
+
+    /**
+     * Method that will make programs the way they were made before
+     */
+    private static EagerProgram[] makeEager(String[] starts, String[] ends){
+        EagerProgram[] programs = new EagerProgram[starts.length];
+        for (int i = 0; i < programs.length; i++) {
+            programs[i] = new EagerProgram("Program", "1", "Beskrivning", starts[i], ends[i], null);
+        }
+        return programs;
+    }
+
+    /**
+     * Method that will ask for the times of programs the way the table does
+     */
+    private static void show(Program[] programs){
+        for (Program program : programs) {
+            program.getStartTime();
+            program.getEndTime();
+        }
+    }
+
+    /**
+     * Method that will return the number of bytes the current thread has allocated so far
+     */
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Method that will return the heap in use after collecting the garbage
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Class that holds the times of a program the way the program did before
+     */
+    @SuppressWarnings("unused")
+    private static class EagerProgram {
+        private final String episodeId;
+        private final String programName;
+        private final String description;
+        private final String image;
+        private final String startTimeUtc;
+        private final String endTimeUtc;
+        private final ZonedDateTime zonedLocalStartTime;
+        private final ZonedDateTime zonedLocalEndTime;
+        private final String formattedStartTime;
+        private final String formattedEndTime;
+
+        private EagerProgram(String programName, String episodeId, String description, String startTimeUtc,
+                             String endTimeUtc, String image){
+            this.programName = programName;
+            this.episodeId = episodeId;
+            this.description = description;
+            this.image = image;
+            this.startTimeUtc = startTimeUtc;
+            this.endTimeUtc = endTimeUtc;
+            zonedLocalStartTime = ZonedDateTime.parse(startTimeUtc).withZoneSameInstant(ZoneId.systemDefault());
+            zonedLocalEndTime = ZonedDateTime.parse(endTimeUtc).withZoneSameInstant(ZoneId.systemDefault());
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm - dd/MM", Locale.ENGLISH);
+            formattedStartTime = zonedLocalStartTime.format(formatter);
+            formattedEndTime = zonedLocalEndTime.format(formatter);
+        }
+    }
+}
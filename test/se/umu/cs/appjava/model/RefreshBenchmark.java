@@ -0,0 +1,145 @@
+package se.umu.cs.appjava.model;
+
+import javax.swing.SwingWorker;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class that measures how long it takes to refresh the schedules of many channels when every answer of the api is
+ * slow. Each channel builds a window from noon to noon, which asks for the pages of two days. The refresh is run the
+ * way it was before, with one swing worker per channel on the pool of swing that runs at most ten at a time, and the
+ * way it is now, in the refresh lane of the fetch scheduler on the threads of the execution backend. The schedules
+ * are fetched from a fixture server and every channel has its own id, so no answer is taken from a cache.
+ * It is not one of the tests and is run on its own, with the delay in milliseconds and the numbers of channels:
+ * java -cp out:out-test se.umu.cs.appjava.model.RefreshBenchmark [delay] [channels...]
+ * The backend is chosen with -Dradioinfo.threads=virtual|platform|auto as in the application. Every channel fetches
+ * with a transport of its own, as the shared transport of the application lets only a few requests to the api run at
+ * the same time and that limit would bound both ways alike.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class RefreshBenchmark {
+    private static final String PATH = "/api/v2/scheduledepisodes/";
+    //the first id of the channels of the next refresh
+    private static final AtomicInteger nextChannelId = new AtomicInteger(100_000);
+
+    public static void main(String[] args) throws Exception {
+        long delayMillis = args.length > 0 ? Long.parseLong(args[0]) : 200;
+        int[] sizes = {10, 50, 200};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        //the builder archives every page it fetches, keep that out of the home directory of the user
+        if (System.getProperty("radioinfo.archive.dir") == null) {
+            System.setProperty("radioinfo.archive.dir", Files.createTempDirectory("radioinfo-benchmark").toString());
+        }
+        try (FixtureServer server = new FixtureServer()) {
+            server.serve(PATH, 200, schedule());
+            //warm up both paths before anything is measured
+            refreshWithSwingWorkers(server, 10);
+            refreshWithScheduler(server, 10);
+            server.setDelay(delayMillis);
+            System.out.println("RefreshBenchmark: " + delayMillis + " ms per answer, two answers per channel, "
+                    + ExecutionBackend.getInstance().getStatistics());
+            System.out.println("  channels  swing workers  fetch scheduler");
+            for (int channels : sizes) {
+                long swingWorkers = refreshWithSwingWorkers(server, channels);
+                long scheduler = refreshWithScheduler(server, channels);
+                System.out.printf("  %8d  %10.2f s  %12.2f s%n", channels, swingWorkers / 1000.0, scheduler / 1000.0);
+            }
+        }
+    }
+
+    /**
+     * Method that will refresh channels with one swing worker each, the way the refresh was run before
+     * @return the time it took in milliseconds
+     */
+    private static long refreshWithSwingWorkers(FixtureServer server, int channels) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(channels);
+        long started = System.nanoTime();
+        for (int i = 0; i < channels; i++) {
+            ChannelInfo channel = channel();
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() {
+                    build(server, channel, done);
+                    return null;
+                }
+            }.execute();
+        }
+        return await(done, started);
+    }
+
+    /**
+     * Method that will refresh channels in the refresh lane of a fetch scheduler, the way the refresh is run now
+     * @return the time it took in milliseconds
+     */
+    private static long refreshWithScheduler(FixtureServer server, int channels) throws InterruptedException {
+        FetchScheduler scheduler = new FetchScheduler(ExecutionBackend.getInstance().getExecutor(),
+                Integer.getInteger("radioinfo.fetch.concurrency", 32));
+        CountDownLatch done = new CountDownLatch(channels);
+        long started = System.nanoTime();
+        for (int i = 0; i < channels; i++) {
+            ChannelInfo channel = channel();
+            scheduler.submit(channel.getChannelId(), FetchScheduler.Priority.REFRESH, () -> build(server, channel, done));
+        }
+        return await(done, started);
+    }
+
+    /**
+     * Method that will build the window of a channel from noon today to noon tomorrow and count down when it is done
+     */
+    private static void build(FixtureServer server, ChannelInfo channel, CountDownLatch done){
+        try {
+            long noon = LocalDate.now().atTime(12, 0).atZone(ZoneId.systemDefault()).toEpochSecond();
+            new ScheduleBuilder(channel, new ApiParser(server.transport()), false, null, noon, noon + 24 * 3600);
+        } catch (Exception e) {
+            System.out.println("Error: could not refresh channel " + channel.getChannelId() + ": " + e.getMessage());
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Method that will wait for a refresh to be done
+     * @return the time since the refresh started in milliseconds
+     */
+    private static long await(CountDownLatch done, long started) throws InterruptedException {
+        if (!done.await(10, TimeUnit.MINUTES)) {
+            throw new AssertionError("the refresh did not finish");
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    /**
+     * Method that will make a channel that has not been fetched before
+     */
+    private static ChannelInfo channel(){
+        return new ChannelInfo("P", String.valueOf(nextChannelId.getAndIncrement()), null, "Rikskanal", null);
+    }
+
+    /**
+     * Method that will build the schedule page every channel and day is answered with
+     */
+    private static String schedule(){
+        StringBuilder page = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sr><schedule>");
+        long start = LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        for (int i = 0; i < 48; i++) {
+            page.append("<scheduledepisode><episodeid>").append(i).append("</episodeid><title>Program ").append(i)
+                    .append("</title><starttimeutc>").append(Instant.ofEpochSecond(start + i * 1800L))
+                    .append("</starttimeutc><endtimeutc>").append(Instant.ofEpochSecond(start + i * 1800L + 1800))
+                    .append("</endtimeutc></scheduledepisode>");
+        }
+        return page.append("</schedule></sr>").toString();
+    }
+}
@@ -0,0 +1,76 @@
+package se.umu.cs.appjava.model;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Class that tests that the archive gives back the page of a day stored last, also when that page has no programs,
+ * and that compacting the files keeps the last page of every day.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ScheduleArchiveTest {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("radioinfo-archive");
+        ScheduleArchive archive = new ScheduleArchive(directory);
+        readsTheLastPageOfADay(archive);
+        anEmptyPageReplacesTheOneBefore(archive);
+        compactingKeepsTheLastPages(archive, directory);
+        System.out.println("ScheduleArchiveTest: ok");
+    }
+
+    /**
+     * Method that will store two pages of a day and a page of another day and read them back
+     */
+    private static void readsTheLastPageOfADay(ScheduleArchive archive) throws Exception {
+        LocalDate day = LocalDate.of(2024, 1, 5);
+        Check.equal(null, archive.load("1", day), "a day that was never stored");
+        archive.store("1", day, List.of(Check.program("A", 0, 10), Check.program("B", 10, 20)));
+        archive.store("1", day.plusDays(1), List.of(Check.program("C", 86400, 86410)));
+        List<Program> latest = List.of(Check.program("A", 0, 10), Check.program("B2", 10, 25));
+        archive.store("1", day, latest);
+        Check.equal(Check.describe(latest), Check.describe(archive.load("1", day).getPrograms()), "the last page");
+        Check.equal(1, archive.load("1", day.plusDays(1)).getPrograms().size(), "the other day is kept");
+    }
+
+    /**
+     * Method that will check that a page without programs is read back as an empty page, not as the page before it
+     */
+    private static void anEmptyPageReplacesTheOneBefore(ScheduleArchive archive) throws Exception {
+        LocalDate day = LocalDate.of(2024, 2, 1);
+        archive.store("2", day, List.of(Check.program("A", 0, 10)));
+        long before = archive.load("2", day).getStoredAt();
+        archive.store("2", day, List.of());
+        ScheduleArchive.Page page = archive.load("2", day);
+        Check.equal(List.of(), page.getPrograms(), "the empty page is read back");
+        Check.isTrue(page.getStoredAt() > before, "the empty page is the last one");
+        archive.store("2", day, List.of(Check.program("B", 0, 10)));
+        Check.equal(List.of("B|b|0|10"), Check.describe(archive.load("2", day).getPrograms()),
+                "a page after the empty one");
+    }
+
+    /**
+     * Method that will store a day so many times that the files are compacted, and check that the last page of every
+     * day, also an empty one, is still read back
+     */
+    private static void compactingKeepsTheLastPages(ScheduleArchive archive, Path directory) throws Exception {
+        LocalDate day = LocalDate.of(2024, 3, 1);
+        LocalDate empty = day.plusDays(1);
+        archive.store("3", empty, List.of(Check.program("X", 0, 10)));
+        archive.store("3", empty, List.of());
+        List<Program> last = null;
+        for (int i = 0; i < 400; i++) {
+            last = List.of(Check.program("A" + i, 0, 10), Check.program("B" + i, 10, 20));
+            archive.store("3", day, last);
+        }
+        Check.equal(Check.describe(last), Check.describe(archive.load("3", day).getPrograms()), "the last page");
+        Check.equal(List.of(), archive.load("3", empty).getPrograms(), "the empty page survives compaction");
+        //two records a batch, had the files never been compacted the index would hold 802 records of 40 bytes
+        Check.isTrue(Files.size(directory.resolve("3.idx")) < 802 * 40, "the files were compacted");
+    }
+}
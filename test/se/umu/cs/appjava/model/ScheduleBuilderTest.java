@@ -0,0 +1,170 @@
+package se.umu.cs.appjava.model;
+
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Class that tests the schedule builder against a fixture server that stands in for the api: that the window is
+ * built and streamed from the pages of both days, that a page that breaks off is taken from the archive, and that the pages are fetched at the same time so a window over two days takes
+ * about one round trip and not two.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ScheduleBuilderTest {
+    private static final String PATH = "/api/v2/scheduledepisodes/";
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    //the round trip the server plays in the timing test
+    private static final long DELAY_MILLIS = 400;
+
+    public static void main(String[] args) throws Exception {
+        //the builder archives every page it fetches, keep that out of the home directory of the user
+        if (System.getProperty("radioinfo.archive.dir") == null) {
+            System.setProperty("radioinfo.archive.dir", Files.createTempDirectory("radioinfo-test").toString());
+        }
+        LocalDate today = LocalDate.now(ZONE);
+        try (FixtureServer server = new FixtureServer()) {
+            serveDays(server, today);
+            buildsTheWindowFromBothDays(server, today);
+            aBrokenPageFallsBackOnTheArchive(server, today);
+            fetchesBothDaysInOneRoundTrip(server, today);
+        }
+        System.out.println("ScheduleBuilderTest: ok");
+    }
+
+    /**
+     * Method that will build a window from noon today to noon tomorrow and check that it holds the programs that start
+     * within it, in order, and the program that runs over midnight only once, also in the rows streamed while building
+     */
+    private static void buildsTheWindowFromBothDays(FixtureServer server, LocalDate today) throws Exception {
+        ArrayList<Program> streamed = new ArrayList<>();
+        ScheduleBuilder builder = build(server, "9001", today, streamed::add);
+        List<String> titles = titles(builder.getPrograms());
+        Check.equal(List.of("Eftermiddag", "Kväll", "Natt", "Morgon", "Förmiddag"), titles, "programs in the window");
+        Check.equal(titles, titles(streamed), "programs streamed");
+        Check.equal(2, server.getRequestCount(), "one request per day");
+    }
+
+    /**
+     * Method that will check that a page that breaks off in the middle is taken from the archive, and that the programs
+     * streamed before it broke off are not streamed again
+     */
+    private static void aBrokenPageFallsBackOnTheArchive(FixtureServer server, LocalDate today) throws Exception {
+        LocalDate tomorrow = today.plusDays(1);
+        List<Program> archived = List.of(
+                Check.program("Eftermiddag", epochSecond(today, 13, 0), epochSecond(today, 18, 0)),
+                Check.program("Kväll", epochSecond(today, 18, 0), epochSecond(today, 23, 0)),
+                Check.program("Sent", epochSecond(today, 23, 0), epochSecond(tomorrow, 0, 0)));
+        ScheduleArchive.getInstance().store("9004", today, archived);
+        String page = schedule(episode("eftermiddag", "Eftermiddag", epochSecond(today, 13, 0),
+                epochSecond(today, 18, 0)) + episode("kväll", "Kväll", epochSecond(today, 18, 0),
+                epochSecond(today, 23, 0)));
+        server.serve(PATH + "?" + query("9004", today), 200, page.substring(0, page.lastIndexOf("<title>")));
+        server.serve(PATH + "?" + query("9004", tomorrow), 200, schedule(""));
+
+        ArrayList<Program> streamed = new ArrayList<>();
+        ScheduleBuilder builder = build(server, "9004", today, streamed::add);
+        Check.equal(List.of("Eftermiddag", "Kväll", "Sent"), titles(builder.getPrograms()), "the archived page is used");
+        Check.equal(List.of("Eftermiddag", "Kväll", "Sent"), titles(streamed), "programs streamed");
+    }
+
+    /**
+     * Method that will check that a window over two days takes about as long as a window within one day when every
+     * answer is delayed, as the two pages are fetched at the same time
+     */
+    private static void fetchesBothDaysInOneRoundTrip(FixtureServer server, LocalDate today) throws Exception {
+        server.setDelay(DELAY_MILLIS);
+        long started = System.nanoTime();
+        long noon = epochSecond(today, 12, 0);
+        new ScheduleBuilder(new ChannelInfo("P", "9002", null, "Rikskanal", null), new ApiParser(server.transport()),
+                false, null, noon, noon + 6 * 3600);
+        long oneDay = (System.nanoTime() - started) / 1_000_000;
+
+        started = System.nanoTime();
+        build(server, "9003", today, null);
+        long twoDays = (System.nanoTime() - started) / 1_000_000;
+        System.out.println("ScheduleBuilderTest: one day " + oneDay + " ms, two days " + twoDays + " ms, round trip "
+                + DELAY_MILLIS + " ms");
+        Check.isTrue(twoDays >= DELAY_MILLIS, "the pages were delayed");
+        Check.isTrue(twoDays < DELAY_MILLIS * 3 / 2, "two days take about one round trip, took " + twoDays + " ms");
+    }
+
+    /**
+     * Method that will build the window from noon today to noon tomorrow
+     * @param listener told about every program as it is parsed, can be null
+     */
+    private static ScheduleBuilder build(FixtureServer server, String channelId, LocalDate today,
+                                         Consumer<Program> listener) throws Exception {
+        ChannelInfo channel = new ChannelInfo("P", channelId, null, "Rikskanal", null);
+        long noon = epochSecond(today, 12, 0);
+        return new ScheduleBuilder(channel, new ApiParser(server.transport()), false, listener, noon, noon + 24 * 3600);
+    }
+
+    /**
+     * Method that will give the server the pages of today and tomorrow, for every channel. The program that starts at
+     * half past eleven at night is on both pages, as it is in the api.
+     */
+    private static void serveDays(FixtureServer server, LocalDate today){
+        LocalDate tomorrow = today.plusDays(1);
+        String night = episode("4", "Natt", epochSecond(today, 23, 30), epochSecond(tomorrow, 1, 0));
+        String first = episode("1", "Morgon idag", epochSecond(today, 6, 0), epochSecond(today, 13, 0))
+                + episode("2", "Eftermiddag", epochSecond(today, 13, 0), epochSecond(today, 18, 0))
+                + episode("3", "Kväll", epochSecond(today, 18, 0), epochSecond(today, 23, 30))
+                + night;
+        String second = night
+                + episode("5", "Morgon", epochSecond(tomorrow, 1, 0), epochSecond(tomorrow, 10, 0))
+                + episode("6", "Förmiddag", epochSecond(tomorrow, 10, 0), epochSecond(tomorrow, 12, 0))
+                + episode("7", "Lunch", epochSecond(tomorrow, 12, 0), epochSecond(tomorrow, 13, 0));
+        for (String channelId : new String[]{"9001", "9002", "9003"}) {
+            server.serve(PATH + "?" + query(channelId, today), 200, schedule(first));
+            server.serve(PATH + "?" + query(channelId, tomorrow), 200, schedule(second));
+        }
+    }
+
+    /**
+     * Method that will build the query the schedule builder asks for the page of a channel and day with
+     */
+    private static String query(String channelId, LocalDate date){
+        return "channelid=" + channelId + "&date=" + date.format(DateTimeFormatter.ISO_LOCAL_DATE) + "&pagination=false";
+    }
+
+    /**
+     * Method that will wrap episodes in a schedule document
+     */
+    private static String schedule(String episodes){
+        return "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<sr><schedule>" + episodes + "</schedule></sr>";
+    }
+
+    /**
+     * Method that will build one scheduledepisode
+     */
+    private static String episode(String id, String title, long start, long end){
+        return "<scheduledepisode><episodeid>" + id + "</episodeid><title>" + title + "</title>"
+                + "<starttimeutc>" + Instant.ofEpochSecond(start) + "</starttimeutc>"
+                + "<endtimeutc>" + Instant.ofEpochSecond(end) + "</endtimeutc></scheduledepisode>";
+    }
+
+    /**
+     * Method that will give the time of a day in epoch seconds
+     */
+    private static long epochSecond(LocalDate date, int hour, int minute){
+        return date.atTime(LocalTime.of(hour, minute)).atZone(ZONE).toEpochSecond();
+    }
+
+    /**
+     * Method that will list the titles of programs
+     */
+    private static List<String> titles(List<Program> programs){
+        ArrayList<String> titles = new ArrayList<>();
+        programs.forEach(program -> titles.add(program.getProgramName()));
+        return titles;
+    }
+}
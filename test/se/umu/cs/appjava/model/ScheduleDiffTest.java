@@ -0,0 +1,107 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class that tests that the changes of a schedule diff turn the rows that are shown into the new schedule.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ScheduleDiffTest {
+
+    public static void main(String[] args){
+        sameScheduleHasNoChanges();
+        findsEachKindOfChange();
+        slideDropsFromTheTopAndMergesTheTail();
+        randomSchedulesAreTurnedIntoEachOther();
+        System.out.println("ScheduleDiffTest: ok");
+    }
+
+    /**
+     * Method that will check that two schedules with the same programs give no changes, even as other instances
+     */
+    private static void sameScheduleHasNoChanges(){
+        List<Program> shown = List.of(Check.program("A", 0, 10), Check.program("B", 10, 20));
+        List<Program> updated = List.of(Check.program("A", 0, 10), Check.program("B", 10, 20));
+        Check.isTrue(ScheduleDiff.between(shown, updated).isEmpty(), "same schedule gives no changes");
+        Check.isTrue(ScheduleDiff.between(List.of(), List.of()).isEmpty(), "empty schedules give no changes");
+    }
+
+    /**
+     * Method that will check the kind and row of an insert, a delete and an update
+     */
+    private static void findsEachKindOfChange(){
+        List<Program> shown = List.of(Check.program("A", 0, 10), Check.program("B", 10, 20),
+                Check.program("C", 20, 30));
+        List<Program> updated = List.of(Check.program("A", 0, 10), Check.program("C", 20, 35),
+                Check.program("D", 35, 40));
+        List<ScheduleDiff.Change> changes = ScheduleDiff.between(shown, updated).getChanges();
+        Check.equal(3, changes.size(), "number of changes");
+        Check.equal(ScheduleDiff.Kind.DELETE, changes.get(0).getKind(), "first change");
+        Check.equal(1, changes.get(0).getRow(), "row of the delete");
+        Check.equal(ScheduleDiff.Kind.UPDATE, changes.get(1).getKind(), "second change");
+        Check.equal(1, changes.get(1).getRow(), "row of the update");
+        Check.equal(35L, changes.get(1).getProgram().getEndEpochSecond(), "end of the updated program");
+        Check.equal(ScheduleDiff.Kind.INSERT, changes.get(2).getKind(), "third change");
+        Check.equal(2, changes.get(2).getRow(), "row of the insert");
+    }
+
+    /**
+     * Method that will check that a slide deletes the dropped programs at the top and merges the tail after the kept
+     * programs
+     */
+    private static void slideDropsFromTheTopAndMergesTheTail(){
+        List<Program> dropped = List.of(Check.program("A", 0, 10));
+        List<Program> kept = List.of(Check.program("B", 10, 20));
+        List<Program> shownTail = List.of(Check.program("C", 20, 30));
+        List<Program> updatedTail = List.of(Check.program("C", 20, 30), Check.program("D", 30, 40));
+        ArrayList<Program> shown = new ArrayList<>(dropped);
+        shown.addAll(kept);
+        shown.addAll(shownTail);
+        ArrayList<Program> updated = new ArrayList<>(kept);
+        updated.addAll(updatedTail);
+
+        ScheduleDiff diff = ScheduleDiff.slide(dropped, kept.size(), shownTail, updatedTail);
+        Check.equal(2, diff.getChanges().size(), "number of changes");
+        Check.equal(0, diff.getChanges().get(0).getRow(), "row of the dropped program");
+        Check.equal(2, diff.getChanges().get(1).getRow(), "row of the new program");
+        Check.equal(Check.describe(updated), Check.describe(Check.apply(shown, diff)), "rows after the slide");
+    }
+
+    /**
+     * Method that will check on random schedules that applying the changes to the shown rows gives the new schedule
+     */
+    private static void randomSchedulesAreTurnedIntoEachOther(){
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<Program> shown = randomSchedule(random);
+            List<Program> updated = randomSchedule(random);
+            ScheduleDiff diff = ScheduleDiff.between(shown, updated);
+            Check.equal(Check.describe(updated), Check.describe(Check.apply(shown, diff)), "rows in round " + round);
+            Check.isTrue(ScheduleDiff.between(updated, updated).isEmpty(), "no changes to itself in round " + round);
+        }
+    }
+
+    /**
+     * Method that will make a schedule of a few programs, some of which start at the same time
+     * @param random the source of the schedule
+     * @return the schedule in start order
+     */
+    private static List<Program> randomSchedule(Random random){
+        ArrayList<Program> schedule = new ArrayList<>();
+        for (int start = 0; start < 100; start += 10) {
+            for (String title : new String[]{"A", "B"}) {
+                if (random.nextInt(3) == 0) {
+                    schedule.add(Check.program(title, start, start + 5 + random.nextInt(2) * 5));
+                }
+            }
+        }
+        schedule.sort(Comparator.comparingLong(Program::getStartEpochSecond).thenComparing(Program::getEpisodeId));
+        return schedule;
+    }
+}
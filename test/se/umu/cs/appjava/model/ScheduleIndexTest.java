@@ -0,0 +1,107 @@
+package se.umu.cs.appjava.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class that tests the lookups of the schedule index against a plain walk through the programs.
+ *
+ * @author Jonatan Westling
+ * @version 1.0
+ * @date 2024-01-05
+ */
+public class ScheduleIndexTest {
+
+    public static void main(String[] args){
+        findsProgramsAroundGapsAndOverlaps();
+        keepsTheProgramsInStartOrder();
+        randomSchedulesMatchAWalk();
+        System.out.println("ScheduleIndexTest: ok");
+    }
+
+    /**
+     * Method that will check the lookups on a schedule with a gap and a long program that others overlap
+     */
+    private static void findsProgramsAroundGapsAndOverlaps(){
+        Program news = Check.program("News", 0, 100);
+        Program sport = Check.program("Sport", 20, 30);
+        Program music = Check.program("Music", 150, 200);
+        ScheduleIndex index = new ScheduleIndex(List.of(news, sport, music), 7);
+
+        Check.equal(7L, index.getVersion(), "version");
+        Check.equal(news, index.programAt(10), "program before the overlap");
+        Check.equal(sport, index.programAt(25), "the program that started last wins");
+        Check.equal(news, index.programAt(50), "program after the overlap");
+        Check.equal(null, index.programAt(120), "nothing in the gap");
+        Check.equal(-1, index.indexAt(120), "no position in the gap");
+        Check.equal(music, index.programAt(150), "program at its start");
+        Check.equal(null, index.programAt(200), "nothing at the end of the last program");
+        Check.equal(sport, index.programAfter(0), "program after a start");
+        Check.equal(music, index.programAfter(120), "program after the gap");
+        Check.equal(null, index.programAfter(150), "nothing after the last start");
+        Check.equal(List.of(sport), index.startingBetween(0, 150), "the range leaves out both ends");
+        Check.equal(List.of(), ScheduleIndex.EMPTY.startingBetween(0, 1000), "empty index has no range");
+        Check.equal(null, ScheduleIndex.EMPTY.programAt(0), "empty index has no program");
+    }
+
+    /**
+     * Method that will check that the positions of the index are in start order with the times of their programs
+     */
+    private static void keepsTheProgramsInStartOrder(){
+        Program late = Check.program("Late", 50, 60);
+        Program early = Check.program("Early", 0, 10);
+        ScheduleIndex index = new ScheduleIndex(List.of(late, early));
+        Check.equal(2, index.size(), "size");
+        Check.equal(early, index.get(0), "first program");
+        Check.equal(0L, index.getStart(0), "first start");
+        Check.equal(10L, index.getEnd(0), "first end");
+        Check.equal(late, index.get(1), "second program");
+        Check.equal(List.of(early, late), index.getPrograms(), "programs");
+    }
+
+    /**
+     * Method that will check on random schedules that every lookup gives what a walk through the programs gives
+     */
+    private static void randomSchedulesMatchAWalk(){
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            ArrayList<Program> schedule = new ArrayList<>();
+            long start = 0;
+            for (int i = random.nextInt(20); i > 0; i--) {
+                start += random.nextInt(30);
+                schedule.add(Check.program("P" + i, start, start + 1 + random.nextInt(60)));
+            }
+            ScheduleIndex index = new ScheduleIndex(schedule);
+            for (long t = -5; t < start + 70; t++) {
+                Check.equal(walkAt(schedule, t), index.programAt(t), "program at " + t + " in round " + round);
+                Check.equal(walkAfter(schedule, t), index.programAfter(t), "program after " + t + " in round " + round);
+            }
+        }
+    }
+
+    /**
+     * Method that will find the program that is on at a time the slow way, the one that started last wins
+     */
+    private static Program walkAt(List<Program> schedule, long t){
+        Program found = null;
+        for (Program program : schedule) {
+            if (program.getStartEpochSecond() <= t && program.getEndEpochSecond() > t) {
+                found = program;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Method that will find the first program that starts after a time the slow way
+     */
+    private static Program walkAfter(List<Program> schedule, long t){
+        for (Program program : schedule) {
+            if (program.getStartEpochSecond() > t) {
+                return program;
+            }
+        }
+        return null;
+    }
+}